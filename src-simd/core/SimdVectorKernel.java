@@ -0,0 +1,196 @@
+package core;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.List;
+
+/*
+ * Vector API implementation. It needs the incubator module, so it lives in a source root of
+ * its own, src-simd, and the rest of the tree builds without it. It is compiled in a second
+ * step, against the classes of src:
+ *
+ *   javac -d out $(find src -name '*.java')
+ *   javac --add-modules jdk.incubator.vector -cp out -d out $(find src-simd -name '*.java')
+ *   java --add-modules jdk.incubator.vector -cp out ...
+ *
+ * Only DistanceKernel refers to this class, by name, so a JVM started without the module, or
+ * a build that skipped the second step, falls back to ScalarVectorKernel.
+ *
+ * Products are accumulated with mul + add rather than fma: on hardware without FMA
+ * instructions the fused operation is emulated and far slower than the scalar loop.
+ * Lane-wise accumulation sums in a different order than the scalar loop, so results may
+ * differ from ScalarVectorKernel in the last bits.
+ */
+final class SimdVectorKernel implements VectorKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    // vectors summed between two checks of the early-abandon condition
+    private static final int ABANDON_VECTORS = 2;
+
+    @Override
+    public String name() {
+        return "simd-" + SPECIES.vectorBitSize();
+    }
+
+    @Override
+    public double dot(double[] a, double[] b) {
+        int n = a.length;
+        int upper = SPECIES.loopBound(n);
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i < upper; i += LANES) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, i);
+            acc = acc.add(va.mul(vb));
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double squaredDistance(double[] a, double[] b) {
+        // same summation order as the bounded variant, so that both give bit-identical
+        // results when it does not abandon; the mtree compares distances computed either way
+        return squaredDistance(a, b, Double.POSITIVE_INFINITY);
+    }
+
+    @Override
+    public double squaredDistance(double[] a, double[] b, double squaredLimit) {
+        int n = a.length;
+        int upper = SPECIES.loopBound(n);
+        double sum = 0;
+        int i = 0;
+        while (i < upper) {
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            int blockEnd = Math.min(i + ABANDON_VECTORS * LANES, upper);
+            for (; i < blockEnd; i += LANES) {
+                DoubleVector diff = DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i));
+                acc = acc.add(diff.mul(diff));
+            }
+            sum += acc.reduceLanes(VectorOperators.ADD);
+            if (sum > squaredLimit) {
+                return sum;
+            }
+        }
+        for (; i < n; i++) {
+            double diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public void dots(double[][] rows, double[] x, double[] out) {
+        int n = x.length;
+        int upper = SPECIES.loopBound(n);
+        int r = 0;
+        // four rows at a time, so that every chunk of x is loaded once per four products
+        for (; r + 4 <= rows.length; r += 4) {
+            double[] r0 = rows[r];
+            double[] r1 = rows[r + 1];
+            double[] r2 = rows[r + 2];
+            double[] r3 = rows[r + 3];
+            DoubleVector acc0 = DoubleVector.zero(SPECIES);
+            DoubleVector acc1 = DoubleVector.zero(SPECIES);
+            DoubleVector acc2 = DoubleVector.zero(SPECIES);
+            DoubleVector acc3 = DoubleVector.zero(SPECIES);
+            int i = 0;
+            for (; i < upper; i += LANES) {
+                DoubleVector vx = DoubleVector.fromArray(SPECIES, x, i);
+                acc0 = acc0.add(DoubleVector.fromArray(SPECIES, r0, i).mul(vx));
+                acc1 = acc1.add(DoubleVector.fromArray(SPECIES, r1, i).mul(vx));
+                acc2 = acc2.add(DoubleVector.fromArray(SPECIES, r2, i).mul(vx));
+                acc3 = acc3.add(DoubleVector.fromArray(SPECIES, r3, i).mul(vx));
+            }
+            double s0 = acc0.reduceLanes(VectorOperators.ADD);
+            double s1 = acc1.reduceLanes(VectorOperators.ADD);
+            double s2 = acc2.reduceLanes(VectorOperators.ADD);
+            double s3 = acc3.reduceLanes(VectorOperators.ADD);
+            for (; i < n; i++) {
+                s0 += r0[i] * x[i];
+                s1 += r1[i] * x[i];
+                s2 += r2[i] * x[i];
+                s3 += r3[i] * x[i];
+            }
+            out[r] = s0;
+            out[r + 1] = s1;
+            out[r + 2] = s2;
+            out[r + 3] = s3;
+        }
+        for (; r < rows.length; r++) {
+            out[r] = dot(rows[r], x);
+        }
+    }
+
+    @Override
+    public void squaredDistances(double[] q, List<? extends DataObj<?>> points, double squaredLimit, double[] out) {
+        int n = q.length;
+        int upper = SPECIES.loopBound(n);
+        int p = 0;
+        // four points at a time, so that every chunk of q is loaded once per four differences;
+        // each sum is accumulated block by block as in squaredDistance, so that the results
+        // are bit-identical to it, and the group is abandoned once all four exceed the limit
+        for (; p + 4 <= points.size(); p += 4) {
+            double[] p0 = points.get(p).getValues();
+            double[] p1 = points.get(p + 1).getValues();
+            double[] p2 = points.get(p + 2).getValues();
+            double[] p3 = points.get(p + 3).getValues();
+            double s0 = 0;
+            double s1 = 0;
+            double s2 = 0;
+            double s3 = 0;
+            boolean abandoned = false;
+            int i = 0;
+            while (i < upper) {
+                DoubleVector acc0 = DoubleVector.zero(SPECIES);
+                DoubleVector acc1 = DoubleVector.zero(SPECIES);
+                DoubleVector acc2 = DoubleVector.zero(SPECIES);
+                DoubleVector acc3 = DoubleVector.zero(SPECIES);
+                int blockEnd = Math.min(i + ABANDON_VECTORS * LANES, upper);
+                for (; i < blockEnd; i += LANES) {
+                    DoubleVector vq = DoubleVector.fromArray(SPECIES, q, i);
+                    DoubleVector d0 = vq.sub(DoubleVector.fromArray(SPECIES, p0, i));
+                    DoubleVector d1 = vq.sub(DoubleVector.fromArray(SPECIES, p1, i));
+                    DoubleVector d2 = vq.sub(DoubleVector.fromArray(SPECIES, p2, i));
+                    DoubleVector d3 = vq.sub(DoubleVector.fromArray(SPECIES, p3, i));
+                    acc0 = acc0.add(d0.mul(d0));
+                    acc1 = acc1.add(d1.mul(d1));
+                    acc2 = acc2.add(d2.mul(d2));
+                    acc3 = acc3.add(d3.mul(d3));
+                }
+                s0 += acc0.reduceLanes(VectorOperators.ADD);
+                s1 += acc1.reduceLanes(VectorOperators.ADD);
+                s2 += acc2.reduceLanes(VectorOperators.ADD);
+                s3 += acc3.reduceLanes(VectorOperators.ADD);
+                if (s0 > squaredLimit && s1 > squaredLimit && s2 > squaredLimit && s3 > squaredLimit) {
+                    abandoned = true;
+                    break;
+                }
+            }
+            if (!abandoned) {
+                for (; i < n; i++) {
+                    double d0 = q[i] - p0[i];
+                    double d1 = q[i] - p1[i];
+                    double d2 = q[i] - p2[i];
+                    double d3 = q[i] - p3[i];
+                    s0 += d0 * d0;
+                    s1 += d1 * d1;
+                    s2 += d2 * d2;
+                    s3 += d3 * d3;
+                }
+            }
+            out[p] = s0;
+            out[p + 1] = s1;
+            out[p + 2] = s2;
+            out[p + 3] = s3;
+        }
+        for (; p < points.size(); p++) {
+            out[p] = squaredDistance(q, points.get(p).getValues(), squaredLimit);
+        }
+    }
+}
@@ -2,24 +2,38 @@ import algorithms.ApproxMCLSHOD;
 import algorithms.ApproxMCOD;
 import algorithms.LSHOD;
 import algorithms.MCOD;
-import core.DataObj;
+import algorithms.MCODBase;
+import algorithms.MultiQueryMCOD;
+import algorithms.ShardedMCOD;
+import core.MultiDetectorRunner;
 import core.Outlier;
+import core.SlideCostMeter;
+import core.SlidePipeline;
 import core.Stream;
+import core.StreamDetector;
+import core.StreamObj;
+import core.mcodbase.SlideProfiler;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Set;
 
 public class Executor {
     private int iMaxMemUsage = 0;
+    // nanoseconds
     private Long nTotalRunTime = 0L;
+    // CPU time and allocations of the detector per slide
+    private SlideCostMeter slideCost;
     private double nTimePerObj;
     private Long m_timePreObjSum;
     private int nProcessed;
     private static final int m_timePreObjInterval = 100;
 
-    private String chosenAlgorithm;
+    // one algorithm, or several run side by side over a single read of the stream
+    private String[] chosenAlgorithms;
     private int windowSize;
     private int slideSize;
     private double rParameter;
@@ -31,13 +45,32 @@ public class Executor {
     // ApproxMCOD additional parameters
     private int pdLimit;
     private double arFactor;
+    private boolean bulkEviction;
+    private boolean batchMode;
+    private int threads = 1;
+    // spatial indexes of set PD and of the micro-clusters for MCOD, ApproxMCOD, MultiQueryMCOD
+    // and ShardedMCOD: mtree, grid, kd or vp
+    private String pdIndex = "mtree";
+    private String mcIndex = "mtree";
+    // MultiQueryMCOD (R, k) queries as R:k pairs separated by commas; --R and --k by default
+    private String queries;
+    // MultiQueryMCOD windows as W or W:slide separated by commas, each query being evaluated
+    // over every window; --W by default
+    private String windows;
+    // record the time of the phases of each slide of MCOD and ApproxMCOD
+    private boolean profile = false;
+    // ShardedMCOD additional parameters
+    private int shards = 1;
+
+    // slides read ahead by a producer thread, 0 to read them on the detector thread; with
+    // several algorithms, the slides each of them may have waiting
+    private int pipelineDepth = 0;
 
     private Stream stream;
+    private SlidePipeline pipeline;
 
-    private MCOD mcodObj;
-    private ApproxMCOD approxMCODObj;
-    private LSHOD lshodObj;
-    private ApproxMCLSHOD approxMCLSHODObj;
+    private StreamDetector detector;
+    private MultiDetectorRunner runner;
 
 
     public Executor(String[] args) {
@@ -57,7 +90,7 @@ public class Executor {
             if (arg.indexOf("--") == 0) {
                 switch (arg) {
                     case "--algorithm":
-                        this.chosenAlgorithm = args[i + 1];
+                        this.chosenAlgorithms = args[i + 1].split(",");
                         break;
                     case "--W":
                         this.windowSize = Integer.parseInt(args[i + 1]);
@@ -77,6 +110,33 @@ public class Executor {
                     case "--arFactor":
                         this.arFactor = Double.parseDouble(args[i + 1]);
                         break;
+                    case "--bulkEviction":
+                        this.bulkEviction = Boolean.parseBoolean(args[i + 1]);
+                        break;
+                    case "--batch":
+                        this.batchMode = Boolean.parseBoolean(args[i + 1]);
+                        break;
+                    case "--threads":
+                        this.threads = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--pdIndex":
+                        this.pdIndex = args[i + 1];
+                        break;
+                    case "--mcIndex":
+                        this.mcIndex = args[i + 1];
+                        break;
+                    case "--queries":
+                        this.queries = args[i + 1];
+                        break;
+                    case "--windows":
+                        this.windows = args[i + 1];
+                        break;
+                    case "--profile":
+                        this.profile = Boolean.parseBoolean(args[i + 1]);
+                        break;
+                    case "--shards":
+                        this.shards = Integer.parseInt(args[i + 1]);
+                        break;
                     case "--datafile":
                         this.dataFile = args[i + 1];
                         break;
@@ -86,6 +146,9 @@ public class Executor {
                     case "--outliersFile":
                         this.outliersFile = args[i + 1];
                         break;
+                    case "--pipeline":
+                        this.pipelineDepth = Integer.parseInt(args[i + 1]);
+                        break;
                 }
             }
         }
@@ -95,122 +158,186 @@ public class Executor {
         // Load dataset file
         stream.loadFile(dataFile, containsClass);
 
-        if (chosenAlgorithm.equals("MCOD")) {
-            mcodObj = new MCOD(windowSize, slideSize, rParameter, kParameter);
-        } else if (chosenAlgorithm.equals("ApproxMCOD")) {
-            approxMCODObj = new ApproxMCOD(windowSize, slideSize, rParameter, kParameter, pdLimit, arFactor);
-        } else if (chosenAlgorithm.equals("LSHOD")) {
-            int dataDimensions = stream.getStreamDataDimensions();
-            lshodObj = new LSHOD(windowSize, slideSize, rParameter, kParameter,
-                    dataDimensions, 4, 10, (int)rParameter);
-        } else if (chosenAlgorithm.equals("ApproxMCLSHOD")) {
-            int dataDimensions = stream.getStreamDataDimensions();
-            approxMCLSHODObj = new ApproxMCLSHOD(windowSize, slideSize, rParameter, kParameter,
-                    dataDimensions, 5, 10, (int)(3 * rParameter / 2));
+        if (chosenAlgorithms.length > 1) {
+            performMultiDetection();
+            return;
         }
 
-        while (stream.hasNext()) {
-            addNewStreamObjects();
-        }
+        detector = createDetector(chosenAlgorithms[0]);
+        slideCost = new SlideCostMeter(detector.getWorkerCost());
 
-        // Evaluate the non-expired nodes still in the window in order to record
-        // the nodes that are pure outliers.
-        if (chosenAlgorithm.equals("MCOD")) {
-            mcodObj.evaluateRemainingElemsInWin();
-        } else if (chosenAlgorithm.equals("ApproxMCOD")) {
-            approxMCODObj.evaluateRemainingElemsInWin();
-        } else if (chosenAlgorithm.equals("LSHOD")) {
-            lshodObj.evaluateRemainingElemsInWin();
-        } else if (chosenAlgorithm.equals("ApproxMCLSHOD")) {
-            approxMCLSHODObj.evaluateRemainingElemsInWin();
+        if (pipelineDepth > 0) {
+            pipeline = new SlidePipeline(stream, slideSize, pipelineDepth);
         }
+        try {
+            while (hasNextSlide()) {
+                addNewStreamObjects();
+            }
+            if (pipeline != null) {
+                pipeline.close();
+            }
 
-        if (chosenAlgorithm.equals("MCOD")) {
-            exportOutliersToFile(mcodObj.getOutliersFound(), outliersFile);
-        } else if (chosenAlgorithm.equals("ApproxMCOD")) {
-            exportOutliersToFile(approxMCODObj.getOutliersFound(), outliersFile);
-        } else if (chosenAlgorithm.equals("LSHOD")) {
-            exportOutliersToFile(lshodObj.getOutliersFound(), outliersFile);
-        } else if (chosenAlgorithm.equals("ApproxMCLSHOD")) {
-            exportOutliersToFile(approxMCLSHODObj.getOutliersFound(), outliersFile);
+            // Evaluate the non-expired nodes still in the window in order to record
+            // the nodes that are pure outliers.
+            detector.evaluateRemainingElemsInWin();
+        } finally {
+            detector.close();
         }
-    }
-
-    public void addNewStreamObjects() {
-        Long nsNow;
 
-        if (chosenAlgorithm.equals("MCOD")) {
-            nsNow = System.nanoTime();
+        exportOutliers(detector, outliersFile);
+    }
 
-            mcodObj.ProcessNewStreamObjects(stream.getIncomingData(slideSize));
+    // Runs all the chosen algorithms over a single read of the stream, each on its own thread
+    private void performMultiDetection() {
+        runner = new MultiDetectorRunner(Math.max(pipelineDepth, 1));
+        for (String algorithm : chosenAlgorithms) {
+            StreamDetector multiDetector = createDetector(algorithm);
+            // the per-slide diagnostics of concurrent detectors would interleave
+            multiDetector.setVerbose(false);
+            runner.addDetector(algorithm, multiDetector);
+        }
+        runner.run(stream, slideSize);
 
-            updateMaxMemUsage();
-            nTotalRunTime += (System.nanoTime() - nsNow) / (1024 * 1024);
+        for (MultiDetectorRunner.DetectorRun run : runner.getRuns()) {
+            exportOutliers(run.detector, withSuffix(outliersFile, "_" + run.name));
+        }
+    }
 
-            // update process time per object
-            nProcessed++;
-            m_timePreObjSum += System.nanoTime() - nsNow;
-            if (nProcessed % m_timePreObjInterval == 0) {
-                nTimePerObj = ((double) m_timePreObjSum) / ((double) m_timePreObjInterval);
-                // init
-                m_timePreObjSum = 0L;
+    private StreamDetector createDetector(String algorithm) {
+        if (algorithm.equals("MCOD")) {
+            MCOD mcodObj = new MCOD(windowSize, slideSize, rParameter, kParameter);
+            mcodObj.setBatchMode(batchMode);
+            mcodObj.setThreads(threads);
+            mcodObj.setPDIndex(pdIndex);
+            mcodObj.setMCIndex(mcIndex);
+            if (profile) {
+                mcodObj.setProfiler(new SlideProfiler());
             }
-        } else if (chosenAlgorithm.equals("ApproxMCOD")) {
-            nsNow = System.nanoTime();
-
-            approxMCODObj.ProcessNewStreamObjects(stream.getIncomingData(slideSize));
-
-            updateMaxMemUsage();
-            nTotalRunTime += (System.nanoTime() - nsNow) / (1024 * 1024);
-
-            // update process time per object
-            nProcessed++;
-            m_timePreObjSum += System.nanoTime() - nsNow;
-            if (nProcessed % m_timePreObjInterval == 0) {
-                nTimePerObj = ((double) m_timePreObjSum) / ((double) m_timePreObjInterval);
-                // init
-                m_timePreObjSum = 0L;
+            return mcodObj;
+        } else if (algorithm.equals("ApproxMCOD")) {
+            warnUnsupportedFlags(algorithm, false, false, true, true);
+            ApproxMCOD approxMCODObj = new ApproxMCOD(windowSize, slideSize, rParameter, kParameter, pdLimit, arFactor);
+            approxMCODObj.setBulkEviction(bulkEviction);
+            approxMCODObj.setPDIndex(pdIndex);
+            approxMCODObj.setMCIndex(mcIndex);
+            if (profile) {
+                approxMCODObj.setProfiler(new SlideProfiler());
             }
-        } else if (chosenAlgorithm.equals("LSHOD")) {
-            nsNow = System.nanoTime();
+            return approxMCODObj;
+        } else if (algorithm.equals("LSHOD")) {
+            warnUnsupportedFlags(algorithm, false, false, false, false);
+            int dataDimensions = stream.getStreamDataDimensions();
+            return new LSHOD(windowSize, slideSize, rParameter, kParameter,
+                    dataDimensions, 4, 10, (int)rParameter);
+        } else if (algorithm.equals("ApproxMCLSHOD")) {
+            warnUnsupportedFlags(algorithm, false, false, false, false);
+            int dataDimensions = stream.getStreamDataDimensions();
+            return new ApproxMCLSHOD(windowSize, slideSize, rParameter, kParameter,
+                    dataDimensions, 5, 10, (int)(3 * rParameter / 2));
+        } else if (algorithm.equals("MultiQueryMCOD")) {
+            warnUnsupportedFlags(algorithm, false, false, true, false);
+            MultiQueryMCOD multiQueryMCODObj = MultiQueryMCOD.fromQueries(windowSize, slideSize,
+                    queries != null ? queries : rParameter + ":" + kParameter, windows);
+            multiQueryMCODObj.setPDIndex(pdIndex);
+            multiQueryMCODObj.setMCIndex(mcIndex);
+            return multiQueryMCODObj;
+        } else if (algorithm.equals("ShardedMCOD")) {
+            // the shards run in parallel instead, one thread each
+            warnUnsupportedFlags(algorithm, true, false, true, false);
+            ShardedMCOD shardedMCODObj = new ShardedMCOD(windowSize, slideSize, rParameter, kParameter, shards);
+            shardedMCODObj.setBatchMode(batchMode);
+            shardedMCODObj.setPDIndex(pdIndex);
+            shardedMCODObj.setMCIndex(mcIndex);
+            return shardedMCODObj;
+        }
+        throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+    }
+
+    // --batch and --threads change how MCOD runs its range searches, --pdIndex and --mcIndex
+    // the indexes it searches and --profile records its phases; the algorithms that do not
+    // support them run as if they were not given, so say so
+    private void warnUnsupportedFlags(String algorithm, boolean supportsBatch, boolean supportsThreads,
+                                      boolean supportsIndexes, boolean supportsProfile) {
+        if (batchMode && !supportsBatch) {
+            System.err.println("--batch is not supported by " + algorithm + ", ignored");
+        }
+        if (threads > 1 && !supportsThreads) {
+            System.err.println("--threads is not supported by " + algorithm + ", ignored");
+        }
+        if (!pdIndex.equals("mtree") && !supportsIndexes) {
+            System.err.println("--pdIndex is not supported by " + algorithm + ", ignored");
+        }
+        if (!mcIndex.equals("mtree") && !supportsIndexes) {
+            System.err.println("--mcIndex is not supported by " + algorithm + ", ignored");
+        }
+        if (profile && !supportsProfile) {
+            System.err.println("--profile is not supported by " + algorithm + ", ignored");
+        }
+    }
 
-            lshodObj.processNewStreamObjects(stream.getIncomingData(slideSize));
+    // file with suffix inserted before the extension: the outliers of each algorithm, when
+    // several run, and of each query of MultiQueryMCOD go to files of their own
+    private static String withSuffix(String file, String suffix) {
+        int dot = file.lastIndexOf('.');
+        if (dot <= file.lastIndexOf(File.separatorChar)) {
+            return file + suffix;
+        }
+        return file.substring(0, dot) + suffix + file.substring(dot);
+    }
 
-            updateMaxMemUsage();
-            nTotalRunTime += (System.nanoTime() - nsNow) / (1024 * 1024);
+    private String querySuffix(MultiQueryMCOD multiQuery, int q) {
+        String suffix = "_R" + multiQuery.getRadius(q) + "_k" + multiQuery.getK(q);
+        if (windows != null) {
+            suffix += "_W" + multiQuery.getWindowSize(q) + "_s" + multiQuery.getSlideSize(q);
+        }
+        return suffix;
+    }
 
-            // update process time per object
-            nProcessed++;
-            m_timePreObjSum += System.nanoTime() - nsNow;
-            if (nProcessed % m_timePreObjInterval == 0) {
-                nTimePerObj = ((double) m_timePreObjSum) / ((double) m_timePreObjInterval);
-                // init
-                m_timePreObjSum = 0L;
+    private void exportOutliers(StreamDetector outlierDetector, String targetFile) {
+        if (outlierDetector instanceof MultiQueryMCOD) {
+            MultiQueryMCOD multiQuery = (MultiQueryMCOD) outlierDetector;
+            for (int q = 0; q < multiQuery.getQueryCount(); q++) {
+                exportOutliersToFile(multiQuery.getOutliersFound(q), withSuffix(targetFile, querySuffix(multiQuery, q)));
             }
-        } else if (chosenAlgorithm.equals("ApproxMCLSHOD")) {
-            nsNow = System.nanoTime();
+        } else {
+            exportOutliersToFile(outlierDetector.getOutliersFound(), targetFile);
+        }
+    }
 
-            approxMCLSHODObj.processNewStreamObjects(stream.getIncomingData(slideSize));
+    private boolean hasNextSlide() {
+        return pipeline != null ? pipeline.hasNext() : stream.hasNext();
+    }
 
-            updateMaxMemUsage();
-            nTotalRunTime += (System.nanoTime() - nsNow) / (1024 * 1024);
+    private ArrayList<StreamObj> nextSlide() {
+        return pipeline != null ? pipeline.nextSlide() : stream.getIncomingData(slideSize);
+    }
 
-            // update process time per object
-            nProcessed++;
-            m_timePreObjSum += System.nanoTime() - nsNow;
-            if (nProcessed % m_timePreObjInterval == 0) {
-                nTimePerObj = ((double) m_timePreObjSum) / ((double) m_timePreObjInterval);
-                // init
-                m_timePreObjSum = 0L;
-            }
+    public void addNewStreamObjects() {
+        Long nsNow = System.nanoTime();
+
+        ArrayList<StreamObj> slide = nextSlide();
+        slideCost.begin();
+        detector.processNewStreamObjects(slide);
+        slideCost.end(slide.size());
+
+        updateMaxMemUsage();
+        nTotalRunTime += System.nanoTime() - nsNow;
+
+        // update process time per object
+        nProcessed++;
+        m_timePreObjSum += System.nanoTime() - nsNow;
+        if (nProcessed % m_timePreObjInterval == 0) {
+            nTimePerObj = ((double) m_timePreObjSum) / ((double) m_timePreObjInterval);
+            // init
+            m_timePreObjSum = 0L;
         }
     }
 
-    private <T extends DataObj<T>> void exportOutliersToFile(Set<Outlier<T>> outliersDetected, String targetFile) {
+    private void exportOutliersToFile(Set<? extends Outlier<?>> outliersDetected, String targetFile) {
         try {
             BufferedWriter bw = new BufferedWriter(new FileWriter(targetFile));
 
-            for (Outlier<T> outlier : outliersDetected) {
+            for (Outlier<?> outlier : outliersDetected) {
                 bw.write(Long.toString(outlier.id));
                 bw.newLine();
             }
@@ -222,23 +349,49 @@ public class Executor {
     }
 
     public HashMap<String, Integer> getResults() {
-        HashMap<String, Integer> results = null;
-        if (chosenAlgorithm.equals("MCOD")) {
-            results = mcodObj.getResults();
-        } else if (chosenAlgorithm.equals("ApproxMCOD")) {
-            results = approxMCODObj.getResults();
-        } else if (chosenAlgorithm.equals("LSHOD")) {
-            results = lshodObj.getResults();
-        } else if (chosenAlgorithm.equals("ApproxMCLSHOD")) {
-            results = approxMCLSHODObj.getResults();
+        return detector.getResults();
+    }
+
+    public void printResults() {
+        if (runner != null) {
+            runner.printReport();
+            for (MultiDetectorRunner.DetectorRun run : runner.getRuns()) {
+                System.out.println("\n" + run.name + ":\n");
+                printStatistics(run.detector.getResults());
+                System.out.println("  Total process time: " + String.format("%.2f ms", run.busyNanos / 1e6) + "\n");
+                run.cost.printReport(System.out);
+                System.out.println();
+                printProfile(run.detector);
+            }
+            return;
         }
 
-        return results;
+        if (detector instanceof MultiQueryMCOD) {
+            MultiQueryMCOD multiQuery = (MultiQueryMCOD) detector;
+            for (int q = 0; q < multiQuery.getQueryCount(); q++) {
+                System.out.println("Query R = " + multiQuery.getRadius(q) + ", k = " + multiQuery.getK(q)
+                        + ", W = " + multiQuery.getWindowSize(q) + ", slide = " + multiQuery.getSlideSize(q) + ":\n");
+                printStatistics(multiQuery.getResults(q));
+            }
+        } else {
+            printStatistics(getResults());
+        }
+        System.out.println("  Max memory usage: " + iMaxMemUsage + " MB\n");
+        System.out.println("  Total process time: " + String.format("%.2f ms", nTotalRunTime / 1e6) + "\n");
+        slideCost.printReport(System.out);
+        System.out.println();
+        printProfile(detector);
     }
 
-    public void printResults() {
-        HashMap<String, Integer> results = getResults();
+    private void printProfile(StreamDetector outlierDetector) {
+        if (outlierDetector instanceof MCODBase && ((MCODBase) outlierDetector).getProfiler() != null) {
+            System.out.println("  Slide phases:");
+            ((MCODBase) outlierDetector).getProfiler().printReport(System.out);
+            System.out.println();
+        }
+    }
 
+    private void printStatistics(HashMap<String, Integer> results) {
         int nBothInlierOutlier = results.get("nBothInlierOutlier");
         int nOnlyInlier = results.get("nOnlyInlier");
         int nOnlyOutlier = results.get("nOnlyOutlier");
@@ -255,8 +408,6 @@ public class Executor {
         }
 
         System.out.println("\n  Total range queries: " + nRangeQueriesExecuted + "\n");
-        System.out.println("  Max memory usage: " + iMaxMemUsage + " MB\n");
-        System.out.println("  Total process time: " + String.format("%.2f ms", nTotalRunTime / 1000.0) + "\n");
     }
 
     private void updateMaxMemUsage() {
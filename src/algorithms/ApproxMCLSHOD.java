@@ -21,15 +21,18 @@
 package algorithms;
 
 
+import core.DistanceKernel;
 import core.lsh.LSHIndex;
 import core.mcodbase.ISBIndex.ISBEntry;
+import core.mcodbase.ISBIndex.ISBSearchResult;
 import core.mcodbase.ISBIndex.ISBEntry.EntryType;
 import core.mcodbase.MicroCluster;
+import core.StreamDetector;
 import core.StreamObj;
 
 import java.util.*;
 
-public class ApproxMCLSHOD extends MCODBase {
+public class ApproxMCLSHOD extends MCODBase implements StreamDetector {
     // DIAG ONLY -- DELETE
     int diagExactMCCount = 0;
     int diagDiscardedMCCount = 0;
@@ -38,6 +41,8 @@ public class ApproxMCLSHOD extends MCODBase {
     int diagSafeInliersCount = 0;
 
     protected LSHIndex<ISBEntry> ISB_PD;
+    // squared distances of the candidates returned by an ISB_PD query
+    private double[] candidateDistancesSq = new double[0];
 
     public ApproxMCLSHOD(int windowSize, int slideSize, double radius, int k, int dimensions,
                          int numHashes, int numHashTables, int w) {
@@ -52,6 +57,12 @@ public class ApproxMCLSHOD extends MCODBase {
         System.out.println("   k: " + m_k);
     }
 
+    @Override
+    protected void removeFromPD(ISBEntry q) {
+        ISB_PD.remove(q);
+        removePDRefs(q);
+    }
+
     void addNeighbor(ISBEntry entry, ISBEntry q, boolean bUpdateState) {
         // check if q still in window
         if (!isElemInWindow(q.id)) {
@@ -92,15 +103,16 @@ public class ApproxMCLSHOD extends MCODBase {
 
         // Get closest micro-cluster
         MicroCluster mcClosest = null;
+        double mcClosestDist = 0;
         if (resultsMC.size() > 0) {
             mcClosest = resultsMC.get(0).mc;
+            mcClosestDist = resultsMC.get(0).distance;
         }
 
         // check if newEntry can be inserted to closest micro-cluster
         boolean bFoundMC = false;
         if (mcClosest != null) {
-            double d = getEuclideanDist(newEntry, mcClosest.mcc);
-            if (d <= m_radius / 2) {
+            if (mcClosestDist <= m_radius / 2) {
                 bFoundMC = true;
             }
         }
@@ -113,21 +125,15 @@ public class ApproxMCLSHOD extends MCODBase {
             setEntryType(newEntry, EntryType.INLIER_MC);
             mcClosest.addEntry(newEntry);
 
-            // Update neighbors of set PD
-            ArrayList<ISBEntry> entries;
-            entries = ISB_PD.getAllEntries();
-            for (ISBEntry q : entries) {
-                if (q.Rmc.contains(mcClosest)) {
-                    if (getEuclideanDist(q, newEntry) <= m_radius) {
-                        if (isNewEntry) {
-                            // update q.count_after and its' outlierness
-                            addNeighbor(q, newEntry, true);
-                        } else {
-                            if (entriesReinsert.contains(q)) {
-                                // update q.count_after or q.nn_before and its' outlierness
-                                addNeighbor(q, newEntry, true);
-                            }
-                        }
+            // Update neighbors of set PD, among the entries whose Rmc contains mcClosest
+            for (ISBEntry q : getPDNeighborsInMC(mcClosest, newEntry, mcClosestDist)) {
+                if (isNewEntry) {
+                    // update q.count_after and its' outlierness
+                    addNeighbor(q, newEntry, true);
+                } else {
+                    if (entriesReinsert.contains(q)) {
+                        // update q.count_after or q.nn_before and its' outlierness
+                        addNeighbor(q, newEntry, true);
                     }
                 }
             }
@@ -138,12 +144,19 @@ public class ApproxMCLSHOD extends MCODBase {
             nRangeQueriesExecuted++;
             // create helper sets for micro-cluster management
             ArrayList<ISBEntry> setNC = new ArrayList<ISBEntry>();
-            ArrayList<ISBEntry> setNNC = new ArrayList<ISBEntry>();
+            ArrayList<ISBSearchResult> setNNC = new ArrayList<ISBSearchResult>();
             ArrayList<ISBEntry> resultEntries;
             resultEntries = ISB_PD.query(newEntry); // 1.5 ###
-            for (ISBEntry sr : resultEntries) {
-                double srDistance = getEuclideanDist(newEntry, sr);
-                if (srDistance <= m_radius) {
+            if (candidateDistancesSq.length < resultEntries.size()) {
+                candidateDistancesSq = new double[Math.max(resultEntries.size(), 2 * candidateDistancesSq.length)];
+            }
+            // distances up to 3R/2 are kept for the Rmc references, entries further than that
+            // only need to be told apart from the closer ones
+            DistanceKernel.squaredDistances(newEntry.getValues(), resultEntries, 2.25 * m_radiusSq, candidateDistancesSq);
+            for (int i = 0; i < resultEntries.size(); i++) {
+                ISBEntry sr = resultEntries.get(i);
+                double srDistanceSq = candidateDistancesSq[i];
+                if (srDistanceSq <= m_radiusSq) {
                     // add sr to neighs of newEntry
                     addNeighbor(newEntry, sr, false);
                     if (isNewEntry) {
@@ -157,10 +170,10 @@ public class ApproxMCLSHOD extends MCODBase {
                     }
                 }
 
-                if (srDistance <= m_radius / 2.0) {
+                if (srDistanceSq <= m_halfRadiusSq) {
                     setNC.add(sr);
                 } else {
-                    setNNC.add(sr);
+                    setNNC.add(new ISBSearchResult(sr, Math.sqrt(srDistanceSq)));
                 }
             }
 
@@ -185,18 +198,18 @@ public class ApproxMCLSHOD extends MCODBase {
                     mcNew.addEntry(q);
                     // move q from set PD to set inlier-mc
                     setEntryType(q, EntryType.INLIER_MC);
-                    ISB_PD.remove(q);
+                    removeFromPD(q);
                 }
 
                 // Update Rmc lists of entries of PD in range 3R/2 from mcNew
-                for (ISBEntry q : setNNC) {
-                    q.Rmc.add(mcNew);
+                for (ISBSearchResult sr : setNNC) {
+                    addToRmc(sr.entry, mcNew, sr.distance);
                 }
             } else {
                 // Add to newEntry neighs entries of near micro-clusters
                 for (SearchResultMC sr : resultsMC) {
                     for (ISBEntry q : sr.mc.entries) {
-                        if (getEuclideanDist(q, newEntry) <= m_radius) {
+                        if (isWithinRadius(q, newEntry)) {
                             // add q to neighs of newEntry
                             addNeighbor(newEntry, q, false);
                         }
@@ -224,7 +237,7 @@ public class ApproxMCLSHOD extends MCODBase {
 
                 // Update newEntry.Rmc
                 for (SearchResultMC sr : resultsMC) {
-                    newEntry.Rmc.add(sr.mc);
+                    addToRmc(newEntry, sr.mc, sr.distance);
                 }
             }
         }
@@ -234,10 +247,8 @@ public class ApproxMCLSHOD extends MCODBase {
         // DIAG ONLY -- DELETE
         diagSafeInliersCount = 0;
 
-        EventItem e = eventQueue.findMin();
-        while ((e != null) && (e.timeStamp <= windowEnd)) {
-            e = eventQueue.extractMin();
-            ISBEntry x = e.entry;
+        ISBEntry x;
+        while ((x = eventQueue.pollDue(windowEnd)) != null) {
             // Entry x must be in window and not in any micro-cluster
             boolean bValid = ( isElemInWindow(x.id) && (x.mc == null) );
             if (bValid) {
@@ -261,7 +272,6 @@ public class ApproxMCLSHOD extends MCODBase {
                     }
                 }
             }
-            e = eventQueue.findMin();
         }
     }
 
@@ -296,7 +306,7 @@ public class ApproxMCLSHOD extends MCODBase {
             } else {
                 // expiredEntry belongs to set PD
                 // remove expiredEntry from PD index
-                ISB_PD.remove(expiredEntry);
+                removeFromPD(expiredEntry);
             }
 
             removeEntry(expiredEntry);
@@ -304,6 +314,7 @@ public class ApproxMCLSHOD extends MCODBase {
         }
     }
 
+    @Override
     public void processNewStreamObjects(ArrayList<StreamObj> streamObjs) {
         if (windowElements.size() >= windowSize) {
             // If the window is full, perform a slide
@@ -323,30 +334,19 @@ public class ApproxMCLSHOD extends MCODBase {
 
 
         // DIAG ONLY -- DELETE
-        System.out.println("-------------------- MCOD baseline --------------------");
-        System.out.println("DIAG - Current stream object: " + (objId - 1));
-        System.out.println("DIAG - Total Exact MCs count: " + diagExactMCCount);
-        System.out.println("DIAG - Total Discarded MCs: " + diagDiscardedMCCount);
-        System.out.println("DIAG - #Times a point was added to an MC: " + diagAdditionsToMC);
-        System.out.println("DIAG - #Times a point was added to PD: " + diagAdditionsToPD);
-        System.out.println("DIAG - #Safe inliers detected: " + diagSafeInliersCount);
-        System.out.println("DIAG - Total -ACTIVE- MCs: " + setMC.size());
-//        System.out.println("DIAG - Total -ACTIVE- PD List Population: " + ISB_PD.getSize());
-        System.out.println("DIAG - TEMP OUTLIER SET SIZE: " + getOutliersFound().size());
-        System.out.println("DIAG - TEMP Window size is: " + windowElements.size());
-        System.out.println("-------------------------------------------------------");
-    }
-
-    private ArrayList<ISBEntry> getExpiredEntries() {
-        ArrayList<ISBEntry> expiredEntries = new ArrayList<>();
-        for (ISBEntry entry : windowElements) {
-            // check if entry has expired
-            if (entry.id < windowStart) {
-                expiredEntries.add(entry);
-            } else {
-                break;
-            }
+        if (verbose) {
+            System.out.println("-------------------- MCOD baseline --------------------");
+            System.out.println("DIAG - Current stream object: " + (objId - 1));
+            System.out.println("DIAG - Total Exact MCs count: " + diagExactMCCount);
+            System.out.println("DIAG - Total Discarded MCs: " + diagDiscardedMCCount);
+            System.out.println("DIAG - #Times a point was added to an MC: " + diagAdditionsToMC);
+            System.out.println("DIAG - #Times a point was added to PD: " + diagAdditionsToPD);
+            System.out.println("DIAG - #Safe inliers detected: " + diagSafeInliersCount);
+            System.out.println("DIAG - Total -ACTIVE- MCs: " + setMC.size());
+//            System.out.println("DIAG - Total -ACTIVE- PD List Population: " + ISB_PD.getSize());
+            System.out.println("DIAG - TEMP OUTLIER SET SIZE: " + getOutliersFound().size());
+            System.out.println("DIAG - TEMP Window size is: " + windowElements.size());
+            System.out.println("-------------------------------------------------------");
         }
-        return expiredEntries;
     }
 }
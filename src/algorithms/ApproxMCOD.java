@@ -23,13 +23,23 @@ package algorithms;
 
 import core.mcodbase.ISBIndex.ISBEntry;
 import core.mcodbase.ISBIndex.ISBSearchResult;
+import core.mcodbase.ISBIndex.ISBSearchResults;
 import core.mcodbase.ISBIndex.ISBEntry.EntryType;
 import core.mcodbase.MicroCluster;
+import core.mcodbase.SlideProfiler.Phase;
+import core.jfr.EventQueueDrainEvent;
+import core.jfr.MicroClusterCreatedEvent;
+import core.jfr.MicroClusterDissolvedEvent;
+import core.jfr.RangeQueryEvent;
+import core.jfr.SafeInlierEvictionEvent;
+import core.jfr.SlideEvent;
+import core.IndexedSet;
+import core.StreamDetector;
 import core.StreamObj;
 
 import java.util.*;
 
-public class ApproxMCOD extends MCODBase {
+public class ApproxMCOD extends MCODBase implements StreamDetector {
     // DIAG ONLY -- DELETE
     int diagExactMCCount = 0;
     int diagDiscardedMCCount = 0;
@@ -39,7 +49,12 @@ public class ApproxMCOD extends MCODBase {
 
     private double m_ar;
     private int m_pdLimit;
-    private Set<ISBEntry> pdSafeInliers; // list of safe inliers
+    private IndexedSet<ISBEntry> pdSafeInliers; // list of safe inliers
+    // evict safe inliers from PD once per slide instead of before each range query
+    private boolean m_bulkEviction = false;
+    // whether the bulk eviction of the current slide removed any safe inlier that no PD query
+    // has accounted for yet
+    private boolean m_bulkEvicted = false;
 
     private Random m_Random;
 
@@ -49,7 +64,7 @@ public class ApproxMCOD extends MCODBase {
         m_Random = new Random();
         m_pdLimit = pdLimit;
         // create PD's safe inliers set
-        pdSafeInliers = new HashSet<>();
+        pdSafeInliers = new IndexedSet<>();
         m_ar = (m_radius / 2.0) + arFactor * m_radius;
 
         System.out.println("Init ApproxMCOD:");
@@ -61,14 +76,35 @@ public class ApproxMCOD extends MCODBase {
         System.out.println("   Approximation radius: " + m_ar);
     }
 
-    ISBEntry getSafeInlier(int idx) {
-        ISBEntry entry = null;
-        Iterator it = pdSafeInliers.iterator();
-        while (idx >= 0) {
-            entry = (ISBEntry)it.next();
-            idx--;
+    public void setBulkEviction(boolean bulkEviction) {
+        m_bulkEviction = bulkEviction;
+    }
+
+    // Removes random safe inliers from PD until its size is within m_pdLimit.
+    // Returns whether any safe inlier was removed.
+    boolean evictSafeInliers() {
+        SafeInlierEvictionEvent event = new SafeInlierEvictionEvent();
+        event.begin();
+        int nEvicted = 0;
+        boolean safeInlierDeleted = false;
+        while (ISB_PD.getSize() > m_pdLimit && !pdSafeInliers.isEmpty()) {
+            nEvicted++;
+            ISBEntry si = pdSafeInliers.getRandom(m_Random);
+            // Remove the selected safe inlier from the PD's ISB
+            removeFromPD(si);
+            // Remove the selected safe inlier from the PD's safe inlier set
+            pdSafeInliers.remove(si);
+            safeInlierDeleted = true;
+        }
+        slideSafeInliersEvicted += nEvicted;
+        event.end();
+        if (nEvicted > 0 && event.shouldCommit()) {
+            event.evicted = nEvicted;
+            event.pdSize = ISB_PD.getSize();
+            event.pdLimit = m_pdLimit;
+            event.commit();
         }
-        return entry;
+        return safeInlierDeleted;
     }
 
     void addNeighbor(ISBEntry entry, ISBEntry q, boolean bUpdateState) {
@@ -111,15 +147,16 @@ public class ApproxMCOD extends MCODBase {
 
         // Get closest micro-cluster
         MicroCluster mcClosest = null;
+        double mcClosestDist = 0;
         if (resultsMC.size() > 0) {
             mcClosest = resultsMC.get(0).mc;
+            mcClosestDist = resultsMC.get(0).distance;
         }
 
         // check if newEntry can be inserted to closest micro-cluster
         boolean bFoundMC = false;
         if (mcClosest != null) {
-            double d = getEuclideanDist(newEntry, mcClosest.mcc);
-            if (d <= m_radius / 2) {
+            if (mcClosestDist <= m_radius / 2) {
                 bFoundMC = true;
             }
         }
@@ -132,44 +169,33 @@ public class ApproxMCOD extends MCODBase {
             setEntryType(newEntry, EntryType.INLIER_MC);
             mcClosest.addEntry(newEntry);
 
-            // Update neighbors of set PD
-            Vector<ISBEntry> entries;
-            entries = ISB_PD.getAllEntries();
-            for (ISBEntry q : entries) {
-                if (q.Rmc.contains(mcClosest)) {
-                    if (getEuclideanDist(q, newEntry) <= m_radius) {
-                        if (isNewEntry) {
-                            // update q.count_after and its' outlierness
-                            addNeighbor(q, newEntry, true);
-                            // Add q to PD's safe inlier set if it is a safe inlier
-                            if (isSafeInlier(q)) pdSafeInliers.add(q);
-                        } else {
-                            if (entriesReinsert.contains(q)) {
-                                // update q.count_after or q.nn_before and its' outlierness
-                                addNeighbor(q, newEntry, true);
-                                // Add q to PD's safe inlier set if it is a safe inlier
-                                if (isSafeInlier(q)) pdSafeInliers.add(q);
-                            }
-                        }
+            // Update neighbors of set PD, among the entries whose Rmc contains mcClosest
+            for (ISBEntry q : getPDNeighborsInMC(mcClosest, newEntry, mcClosestDist)) {
+                if (isNewEntry) {
+                    // update q.count_after and its' outlierness
+                    addNeighbor(q, newEntry, true);
+                    // Add q to PD's safe inlier set if it is a safe inlier
+                    if (isSafeInlier(q)) pdSafeInliers.add(q);
+                } else {
+                    if (entriesReinsert.contains(q)) {
+                        // update q.count_after or q.nn_before and its' outlierness
+                        addNeighbor(q, newEntry, true);
+                        // Add q to PD's safe inlier set if it is a safe inlier
+                        if (isSafeInlier(q)) pdSafeInliers.add(q);
                     }
                 }
             }
         }
         else {
-            // Check ISB_PD's size to determine if a random safe inlier must be removed
-            boolean safeInlierDeleted = false;
-            int nSafeInliers = pdSafeInliers.size();
-            while (ISB_PD.getSize() > m_pdLimit && nSafeInliers > 0) {
-                int idx = m_Random.nextInt(nSafeInliers);
-                ISBEntry si = getSafeInlier(idx);
-                // Remove the selected safe inlier from the PD's ISB
-                ISB_PD.remove(si);
-                // Remove the selected safe inlier from the PD's safe inlier set
-                pdSafeInliers.remove(si);
-                // Update the value of the deletion flag
-                safeInlierDeleted = true;
-                // Update safe inliers counter
-                nSafeInliers = pdSafeInliers.size();
+            // Check ISB_PD's size to determine if random safe inliers must be removed.
+            // With bulk eviction this was done at the start of the slide; as without it, the
+            // ANC approximation only applies to the first query after the eviction.
+            boolean safeInlierDeleted;
+            if (m_bulkEviction) {
+                safeInlierDeleted = m_bulkEvicted;
+                m_bulkEvicted = false;
+            } else {
+                safeInlierDeleted = evictSafeInliers();
             }
 
             // No close enough micro-cluster found.
@@ -178,10 +204,16 @@ public class ApproxMCOD extends MCODBase {
 
             // create helper sets for micro-cluster management
             ArrayList<ISBEntry> setNC = new ArrayList<ISBEntry>();
-            ArrayList<ISBEntry> setNNC = new ArrayList<ISBEntry>();
+            ArrayList<ISBSearchResult> setNNC = new ArrayList<ISBSearchResult>();
             ArrayList<ISBEntry> setANC = new ArrayList<ISBEntry>();
-            Vector<ISBSearchResult> resultEntries;
+            ISBSearchResults resultEntries;
+            long searchStart = phaseStart();
+            RangeQueryEvent searchEvent = new RangeQueryEvent();
+            searchEvent.begin();
             resultEntries = ISB_PD.rangeSearch(newEntry, 1.5 * m_radius); // 1.5 ###
+            phaseEnd(Phase.PD_SEARCH, searchStart);
+            commitRangeQuery(searchEvent, "PD", 1.5 * m_radius, 1, ISB_PD.getSize(), resultEntries.candidates,
+                    resultEntries.size());
             for (ISBSearchResult sr : resultEntries) {
                 ISBEntry q = sr.entry;
                 if (sr.distance <= m_radius) {
@@ -205,7 +237,7 @@ public class ApproxMCOD extends MCODBase {
                 if (sr.distance <= m_radius / 2.0) {
                     setNC.add(q);
                 } else {
-                    setNNC.add(q);
+                    setNNC.add(sr);
                     if (safeInlierDeleted && sr.distance <= m_ar) {
                         setANC.add(q);
                     }
@@ -225,6 +257,9 @@ public class ApproxMCOD extends MCODBase {
                 // DIAG ONLY -- DELETE
                 diagExactMCCount ++;
 
+                long mcStart = phaseStart();
+                MicroClusterCreatedEvent mcEvent = new MicroClusterCreatedEvent();
+                mcEvent.begin();
                 // create new micro-cluster with center newEntry
                 MicroCluster mcNew = new MicroCluster(newEntry);
                 addMicroCluster(mcNew);
@@ -241,7 +276,7 @@ public class ApproxMCOD extends MCODBase {
                     mcNew.addEntry(q);
                     // move q from set PD to set inlier-mc
                     setEntryType(q, EntryType.INLIER_MC);
-                    ISB_PD.remove(q);
+                    removeFromPD(q);
                     // If q is a safe inlier, also remove it from the PD's safe inlier set.
                     if (isSafeInlier(q)) pdSafeInliers.remove(q);
                 }
@@ -253,21 +288,23 @@ public class ApproxMCOD extends MCODBase {
                     mcNew.addEntry(q);
                     // move q from set PD to set inlier-mc
                     setEntryType(q, EntryType.INLIER_MC);
-                    ISB_PD.remove(q);
+                    removeFromPD(q);
                     // If q is a safe inlier, also remove it from the PD's safe inlier set.
                     if (isSafeInlier(q)) pdSafeInliers.remove(q);
                 }
 
 
                 // Update Rmc lists of entries of PD in range 3R/2 from mcNew
-                for (ISBEntry q : setNNC) {
-                    q.Rmc.add(mcNew);
+                for (ISBSearchResult sr : setNNC) {
+                    addToRmc(sr.entry, mcNew, sr.distance);
                 }
+                phaseEnd(Phase.MC_CREATION, mcStart);
+                commitMCCreated(mcEvent, mcNew);
             } else {
                 // Add to newEntry neighs entries of near micro-clusters
                 for (SearchResultMC sr : resultsMC) {
                     for (ISBEntry q : sr.mc.entries) {
-                        if (getEuclideanDist(q, newEntry) <= m_radius) {
+                        if (isWithinRadius(q, newEntry)) {
                             // add q to neighs of newEntry
                             addNeighbor(newEntry, q, false);
                         }
@@ -299,7 +336,7 @@ public class ApproxMCOD extends MCODBase {
 
                     // Update newEntry.Rmc
                     for (SearchResultMC sr : resultsMC) {
-                        newEntry.Rmc.add(sr.mc);
+                        addToRmc(newEntry, sr.mc, sr.distance);
                     }
                 }
             }
@@ -310,10 +347,14 @@ public class ApproxMCOD extends MCODBase {
         // DIAG ONLY -- DELETE
         diagSafeInliersCount = 0;
 
-        EventItem e = eventQueue.findMin();
-        while ((e != null) && (e.timeStamp <= windowEnd)) {
-            e = eventQueue.extractMin();
-            ISBEntry x = e.entry;
+        long start = phaseStart();
+        EventQueueDrainEvent drainEvent = new EventQueueDrainEvent();
+        drainEvent.begin();
+        int nDrained = 0;
+        int nOutliers = 0;
+        ISBEntry x;
+        while ((x = eventQueue.pollDue(windowEnd)) != null) {
+            nDrained++;
             // entry x must be in window and not in any micro-cluster
             boolean bValid = ( isElemInWindow(x.id) && (x.mc == null) );
             if (bValid) {
@@ -324,6 +365,7 @@ public class ApproxMCOD extends MCODBase {
                 if (count < m_k) {
                     // x is an outlier
                     setEntryType(x, EntryType.OUTLIER);
+                    nOutliers++;
                 } else {
                     // DIAG ONLY -- DELETE
                     if (x.count_after >= m_k) diagSafeInliersCount++;
@@ -337,8 +379,9 @@ public class ApproxMCOD extends MCODBase {
                     }
                 }
             }
-            e = eventQueue.findMin();
         }
+        phaseEnd(Phase.EVENT_QUEUE, start);
+        commitEventQueueDrain(drainEvent, nDrained, nOutliers);
     }
 
     void processExpiredEntries(ArrayList<ISBEntry> expiredEntries) {
@@ -350,6 +393,9 @@ public class ApproxMCOD extends MCODBase {
                     // DIAG ONLY -- DELETE
                     diagDiscardedMCCount ++;
 
+                    long mcStart = phaseStart();
+                    MicroClusterDissolvedEvent mcEvent = new MicroClusterDissolvedEvent();
+                    mcEvent.begin();
                     // remove micro-cluster mc
                     try {
                         removeMicroCluster(mc);
@@ -368,11 +414,14 @@ public class ApproxMCOD extends MCODBase {
                         q.initEntry();
                         processNewEntry(q, false);
                     }
+                    phaseEnd(Phase.MC_DISSOLUTION, mcStart);
+                    commitMCDissolved(mcEvent, mc);
                 }
             } else {
                 // expiredEntry belongs to set PD
                 // remove expiredEntry from PD index
-                ISB_PD.remove(expiredEntry);
+                removeFromPD(expiredEntry);
+                pdSafeInliers.remove(expiredEntry);
             }
 
             removeEntry(expiredEntry);
@@ -380,12 +429,26 @@ public class ApproxMCOD extends MCODBase {
         }
     }
 
+    // StreamDetector entry point
+    @Override
+    public void processNewStreamObjects(ArrayList<StreamObj> streamObjs) {
+        ProcessNewStreamObjects(streamObjs);
+    }
+
     public void ProcessNewStreamObjects(ArrayList<StreamObj> streamObjs) {
+        SlideEvent slideEvent = startSlide();
+        long firstId = objId;
         if (windowElements.size() >= windowSize) {
             // If the window is full, perform a slide
             doSlide();
             // Process expired entries
+            long start = phaseStart();
             processExpiredEntries(getExpiredEntries());
+            phaseEnd(Phase.EXPIRY, start);
+        }
+
+        if (m_bulkEviction) {
+            m_bulkEvicted = evictSafeInliers();
         }
 
         // Process new entries
@@ -396,35 +459,25 @@ public class ApproxMCOD extends MCODBase {
 
             objId++; // update object identifier
         }
+        endSlide(slideEvent, firstId, streamObjs.size());
 
 
         // DIAG ONLY -- DELETE
-        System.out.println("---------------------- ApproxMCOD ----------------------");
-        System.out.println("DIAG - Current stream object: " + (objId - 1));
-        System.out.println("DIAG - Total Exact MCs count: " + diagExactMCCount);
-        System.out.println("DIAG - Total Discarded MCs: " + diagDiscardedMCCount);
-//        System.out.println("DIAG - #Times an MC was sustained: " + diagSustainedMCCount);
-        System.out.println("DIAG - #Times a point was added to an MC: " + diagAdditionsToMC);
-        System.out.println("DIAG - #Times a point was added to PD: " + diagAdditionsToPD);
-//        System.out.println("DIAG - #Safe inliers detected: " + diagSafeInliersCount);
-        System.out.println("DIAG - Total -ACTIVE- MCs: " + setMC.size());
-        System.out.println("DIAG - Total -ACTIVE- PD's Safe Inliers List Population: " + pdSafeInliers.size());
-        System.out.println("DIAG - Total -ACTIVE- PD List Population: " + ISB_PD.getSize());
-        System.out.println("DIAG - TEMP OUTLIER SET SIZE: " + getOutliersFound().size());
-        System.out.println("DIAG - TEMP Window size is: " + windowElements.size());
-        System.out.println("--------------------------------------------------------");
-    }
-
-    private ArrayList<ISBEntry> getExpiredEntries() {
-        ArrayList<ISBEntry> expiredEntries = new ArrayList<>();
-        for (ISBEntry entry : windowElements) {
-            // check if entry has expired
-            if (entry.id < windowStart) {
-                expiredEntries.add(entry);
-            } else {
-                break;
-            }
+        if (verbose) {
+            System.out.println("---------------------- ApproxMCOD ----------------------");
+            System.out.println("DIAG - Current stream object: " + (objId - 1));
+            System.out.println("DIAG - Total Exact MCs count: " + diagExactMCCount);
+            System.out.println("DIAG - Total Discarded MCs: " + diagDiscardedMCCount);
+//            System.out.println("DIAG - #Times an MC was sustained: " + diagSustainedMCCount);
+            System.out.println("DIAG - #Times a point was added to an MC: " + diagAdditionsToMC);
+            System.out.println("DIAG - #Times a point was added to PD: " + diagAdditionsToPD);
+//            System.out.println("DIAG - #Safe inliers detected: " + diagSafeInliersCount);
+            System.out.println("DIAG - Total -ACTIVE- MCs: " + setMC.size());
+            System.out.println("DIAG - Total -ACTIVE- PD's Safe Inliers List Population: " + pdSafeInliers.size());
+            System.out.println("DIAG - Total -ACTIVE- PD List Population: " + ISB_PD.getSize());
+            System.out.println("DIAG - TEMP OUTLIER SET SIZE: " + getOutliersFound().size());
+            System.out.println("DIAG - TEMP Window size is: " + windowElements.size());
+            System.out.println("--------------------------------------------------------");
         }
-        return expiredEntries;
     }
 }
@@ -1,5 +1,7 @@
 package algorithms;
 
+import core.EventQueue;
+import core.StreamDetector;
 import core.StreamObj;
 import core.lsh.Entry;
 import core.OutlierDetector;
@@ -8,68 +10,13 @@ import core.lsh.LSHIndex;
 import java.util.*;
 
 
-public class LSHOD extends OutlierDetector<Entry> {
-
-    protected static class EventItem implements Comparable<EventItem> {
-        public Entry entry;
-        public Long timeStamp;
-
-        public EventItem(Entry entry, Long timeStamp) {
-            this.entry = entry;
-            this.timeStamp = timeStamp;
-        }
-
-        @Override
-        public int compareTo(EventItem t) {
-            if (this.timeStamp > t.timeStamp) {
-                return +1;
-            } else if (this.timeStamp < t.timeStamp) {
-                return -1;
-            } else {
-                if (this.entry.id > t.entry.id)
-                    return +1;
-                else if (this.entry.id < t.entry.id)
-                    return -1;
-            }
-            return 0;
-        }
-    }
-
-    protected static class EventQueue {
-        public TreeSet<EventItem> setEvents;
-
-        public EventQueue() {
-            setEvents = new TreeSet<EventItem>();
-        }
-
-        public void insert(Entry entry, Long expTime) {
-            setEvents.add(new EventItem(entry, expTime));
-        }
-
-        public EventItem findMin() {
-            if (setEvents.size() > 0) {
-                // events are sorted ascenting by expiration time
-                return setEvents.first();
-            }
-            return null;
-        }
-
-        public EventItem extractMin() {
-            EventItem e = findMin();
-            if (e != null) {
-                setEvents.remove(e);
-                return e;
-            }
-            return null;
-        }
-    }
-
+public class LSHOD extends OutlierDetector<Entry> implements StreamDetector {
 
     protected int nRangeQueriesExecuted = 0;
 
     // object identifier increments with each new data stream object
     protected Long objId;
-    protected EventQueue eventQueue;
+    protected EventQueue<Entry> eventQueue;
     // LSH index of entries
     protected LSHIndex<Entry> lshIndex;
 
@@ -93,8 +40,9 @@ public class LSHOD extends OutlierDetector<Entry> {
         // create LSH Index
         lshIndex = new LSHIndex<Entry>(numberOfHashes, numberOfHashTables, w, dimensions, k);
 
-        // create event queue
-        eventQueue = new EventQueue();
+        // create event queue; expiration times are due at the windowEnd of a slide,
+        // so the queue is bucketed by slide starting from the first windowEnd
+        eventQueue = new EventQueue<>(windowSize, slideSize, windowSize / slideSize + 2);
 
         // init statistics
         m_nBothInlierOutlier = 0;
@@ -253,10 +201,8 @@ public class LSHOD extends OutlierDetector<Entry> {
     }
 
     void processEventQueue(Entry entryExpired) {
-        EventItem e = eventQueue.findMin();
-        while ((e != null) && (e.timeStamp <= windowEnd)) {
-            e = eventQueue.extractMin();
-            Entry x = e.entry;
+        Entry x;
+        while ((x = eventQueue.pollDue(windowEnd)) != null) {
             // node x must be in window and not in any micro-cluster
             boolean bValid = isElemInWindow(x.id);
             if (bValid) {
@@ -277,7 +223,6 @@ public class LSHOD extends OutlierDetector<Entry> {
                     }
                 }
             }
-            e = eventQueue.findMin();
         }
     }
 
@@ -291,6 +236,7 @@ public class LSHOD extends OutlierDetector<Entry> {
         }
     }
 
+    @Override
     public void processNewStreamObjects(ArrayList<StreamObj> streamObjs) {
         if (windowElements.size() >= windowSize) {
             // If the window is full, perform a slide
@@ -310,24 +256,12 @@ public class LSHOD extends OutlierDetector<Entry> {
 
 
         // DIAG ONLY -- DELETE
-        System.out.println("------------------------ LSHOD ------------------------");
-        System.out.println("DIAG - Current stream object: " + (objId - 1));
-        System.out.println("DIAG - TEMP OUTLIER SET SIZE: " + getOutliersFound().size());
-        System.out.println("DIAG - TEMP Window size is: " + windowElements.size());
-        System.out.println("-------------------------------------------------------");
-    }
-
-    private ArrayList<Entry> getExpiredEntries() {
-        ArrayList<Entry> expiredNodes = new ArrayList<>();
-        for (Entry entry : windowElements) {
-            // check if node has expired
-            if (entry.id < windowStart) {
-                expiredNodes.add(entry);
-            } else {
-                break;
-            }
+        if (verbose) {
+            System.out.println("------------------------ LSHOD ------------------------");
+            System.out.println("DIAG - Current stream object: " + (objId - 1));
+            System.out.println("DIAG - TEMP OUTLIER SET SIZE: " + getOutliersFound().size());
+            System.out.println("DIAG - TEMP Window size is: " + windowElements.size());
+            System.out.println("-------------------------------------------------------");
         }
-        return expiredNodes;
     }
-
 }
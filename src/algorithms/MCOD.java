@@ -25,11 +25,17 @@ import core.mcodbase.ISBIndex.ISBEntry;
 import core.mcodbase.ISBIndex.ISBSearchResult;
 import core.mcodbase.ISBIndex.ISBEntry.EntryType;
 import core.mcodbase.MicroCluster;
+import core.mcodbase.SlideProfiler.Phase;
+import core.jfr.EventQueueDrainEvent;
+import core.jfr.MicroClusterCreatedEvent;
+import core.jfr.MicroClusterDissolvedEvent;
+import core.jfr.SlideEvent;
+import core.StreamDetector;
 import core.StreamObj;
 
 import java.util.*;
 
-public class MCOD extends MCODBase {
+public class MCOD extends MCODBase implements StreamDetector {
     // DIAG ONLY -- DELETE
     int diagExactMCCount = 0;
     int diagDiscardedMCCount = 0;
@@ -38,13 +44,21 @@ public class MCOD extends MCODBase {
     int diagSafeInliersCount = 0;
 
     public MCOD(int windowSize, int slideSize, double radius, int k) {
-        super(windowSize, slideSize, radius, k);
+        this(windowSize, slideSize, radius, k, true);
+    }
 
-        System.out.println("Init MCOD:");
-        System.out.println("   window_size: " + windowSize);
-        System.out.println("   slide_size: " + slideSize);
-        System.out.println("   radius: " + m_radius);
-        System.out.println("   k: " + m_k);
+    // With verbose false, neither the parameters nor the per-slide diagnostics are printed
+    protected MCOD(int windowSize, int slideSize, double radius, int k, boolean verbose) {
+        super(windowSize, slideSize, radius, k);
+        setVerbose(verbose);
+
+        if (verbose) {
+            System.out.println("Init MCOD:");
+            System.out.println("   window_size: " + windowSize);
+            System.out.println("   slide_size: " + slideSize);
+            System.out.println("   radius: " + m_radius);
+            System.out.println("   k: " + m_k);
+        }
     }
 
     void addNeighbor(ISBEntry entry, ISBEntry q, boolean bUpdateState) {
@@ -83,19 +97,20 @@ public class MCOD extends MCODBase {
         // Perform 3R/2 range query to cluster centers w.r.t new entry
         Vector<SearchResultMC> resultsMC;
         // results are sorted ascenting by distance
-        resultsMC = RangeSearchMC(newEntry, 1.5 * m_radius);
+        resultsMC = findMCsInRange(newEntry);
 
         // Get closest micro-cluster
         MicroCluster mcClosest = null;
+        double mcClosestDist = 0;
         if (resultsMC.size() > 0) {
             mcClosest = resultsMC.get(0).mc;
+            mcClosestDist = resultsMC.get(0).distance;
         }
 
         // check if newEntry can be inserted to closest micro-cluster
         boolean bFoundMC = false;
         if (mcClosest != null) {
-            double d = getEuclideanDist(newEntry, mcClosest.mcc);
-            if (d <= m_radius / 2) {
+            if (mcClosestDist <= m_radius / 2) {
                 bFoundMC = true;
             }
         }
@@ -108,21 +123,15 @@ public class MCOD extends MCODBase {
             setEntryType(newEntry, EntryType.INLIER_MC);
             mcClosest.addEntry(newEntry);
 
-            // Update neighbors of set PD
-            Vector<ISBEntry> entries;
-            entries = ISB_PD.getAllEntries();
-            for (ISBEntry q : entries) {
-                if (q.Rmc.contains(mcClosest)) {
-                    if (getEuclideanDist(q, newEntry) <= m_radius) {
-                        if (isNewEntry) {
-                            // update q.count_after and its' outlierness
-                            addNeighbor(q, newEntry, true);
-                        } else {
-                            if (entriesReinsert.contains(q)) {
-                                // update q.count_after or q.nn_before and its' outlierness
-                                addNeighbor(q, newEntry, true);
-                            }
-                        }
+            // Update neighbors of set PD, among the entries whose Rmc contains mcClosest
+            for (ISBEntry q : getPDNeighborsInMC(mcClosest, newEntry, mcClosestDist)) {
+                if (isNewEntry) {
+                    // update q.count_after and its' outlierness
+                    addNeighbor(q, newEntry, true);
+                } else {
+                    if (entriesReinsert.contains(q)) {
+                        // update q.count_after or q.nn_before and its' outlierness
+                        addNeighbor(q, newEntry, true);
                     }
                 }
             }
@@ -133,9 +142,9 @@ public class MCOD extends MCODBase {
             nRangeQueriesExecuted++;
             // create helper sets for micro-cluster management
             ArrayList<ISBEntry> setNC = new ArrayList<ISBEntry>();
-            ArrayList<ISBEntry> setNNC = new ArrayList<ISBEntry>();
+            ArrayList<ISBSearchResult> setNNC = new ArrayList<ISBSearchResult>();
             Vector<ISBSearchResult> resultEntries;
-            resultEntries = ISB_PD.rangeSearch(newEntry, 1.5 * m_radius); // 1.5 ###
+            resultEntries = findPDInRange(newEntry); // 1.5 ###
             for (ISBSearchResult sr : resultEntries) {
                 ISBEntry q = sr.entry;
                 if (sr.distance <= m_radius) {
@@ -155,7 +164,7 @@ public class MCOD extends MCODBase {
                 if (sr.distance <= m_radius / 2.0) {
                     setNC.add(q);
                 } else {
-                    setNNC.add(q);
+                    setNNC.add(sr);
                 }
             }
 
@@ -164,6 +173,9 @@ public class MCOD extends MCODBase {
                 // DIAG ONLY -- DELETE
                 diagExactMCCount ++;
 
+                long mcStart = phaseStart();
+                MicroClusterCreatedEvent mcEvent = new MicroClusterCreatedEvent();
+                mcEvent.begin();
                 // create new micro-cluster with center newEntry
                 MicroCluster mcNew = new MicroCluster(newEntry);
                 addMicroCluster(mcNew);
@@ -180,18 +192,20 @@ public class MCOD extends MCODBase {
                     mcNew.addEntry(q);
                     // move q from set PD to set inlier-mc
                     setEntryType(q, EntryType.INLIER_MC);
-                    ISB_PD.remove(q);
+                    removeFromPD(q);
                 }
 
                 // Update Rmc lists of entries of PD in range 3R/2 from mcNew
-                for (ISBEntry q : setNNC) {
-                    q.Rmc.add(mcNew);
+                for (ISBSearchResult sr : setNNC) {
+                    addToRmc(sr.entry, mcNew, sr.distance);
                 }
+                phaseEnd(Phase.MC_CREATION, mcStart);
+                commitMCCreated(mcEvent, mcNew);
             } else {
                 // Add to newEntry neighs entries of near micro-clusters
                 for (SearchResultMC sr : resultsMC) {
                     for (ISBEntry q : sr.mc.entries) {
-                        if (getEuclideanDist(q, newEntry) <= m_radius) {
+                        if (isWithinRadius(q, newEntry)) {
                             // add q to neighs of newEntry
                             addNeighbor(newEntry, q, false);
                         }
@@ -219,7 +233,7 @@ public class MCOD extends MCODBase {
 
                 // Update newEntry.Rmc
                 for (SearchResultMC sr : resultsMC) {
-                    newEntry.Rmc.add(sr.mc);
+                    addToRmc(newEntry, sr.mc, sr.distance);
                 }
             }
         }
@@ -229,10 +243,14 @@ public class MCOD extends MCODBase {
         // DIAG ONLY -- DELETE
         diagSafeInliersCount = 0;
 
-        EventItem e = eventQueue.findMin();
-        while ((e != null) && (e.timeStamp <= windowEnd)) {
-            e = eventQueue.extractMin();
-            ISBEntry x = e.entry;
+        long start = phaseStart();
+        EventQueueDrainEvent drainEvent = new EventQueueDrainEvent();
+        drainEvent.begin();
+        int nDrained = 0;
+        int nOutliers = 0;
+        ISBEntry x;
+        while ((x = eventQueue.pollDue(windowEnd)) != null) {
+            nDrained++;
             // Entry x must be in window and not in any micro-cluster
             boolean bValid = ( isElemInWindow(x.id) && (x.mc == null) );
             if (bValid) {
@@ -243,6 +261,7 @@ public class MCOD extends MCODBase {
                 if (count < m_k) {
                     // x is an outlier
                     setEntryType(x, EntryType.OUTLIER);
+                    nOutliers++;
                 } else {
                     // DIAG ONLY -- DELETE
                     if (x.count_after >= m_k) diagSafeInliersCount++;
@@ -256,8 +275,9 @@ public class MCOD extends MCODBase {
                     }
                 }
             }
-            e = eventQueue.findMin();
         }
+        phaseEnd(Phase.EVENT_QUEUE, start);
+        commitEventQueueDrain(drainEvent, nDrained, nOutliers);
     }
 
     void processExpiredEntries(ArrayList<ISBEntry> expiredEntries) {
@@ -269,6 +289,9 @@ public class MCOD extends MCODBase {
                     // DIAG ONLY -- DELETE
                     diagDiscardedMCCount ++;
 
+                    long mcStart = phaseStart();
+                    MicroClusterDissolvedEvent mcEvent = new MicroClusterDissolvedEvent();
+                    mcEvent.begin();
                     // remove micro-cluster mc
                     try {
                         removeMicroCluster(mc);
@@ -287,11 +310,13 @@ public class MCOD extends MCODBase {
                         q.initEntry();
                         processNewEntry(q, false);
                     }
+                    phaseEnd(Phase.MC_DISSOLUTION, mcStart);
+                    commitMCDissolved(mcEvent, mc);
                 }
             } else {
                 // expiredEntry belongs to set PD
                 // remove expiredEntry from PD index
-                ISB_PD.remove(expiredEntry);
+                removeFromPD(expiredEntry);
             }
 
             removeEntry(expiredEntry);
@@ -299,49 +324,69 @@ public class MCOD extends MCODBase {
         }
     }
 
+    // StreamDetector entry point
+    @Override
+    public void processNewStreamObjects(ArrayList<StreamObj> streamObjs) {
+        ProcessNewStreamObjects(streamObjs);
+    }
+
     public void ProcessNewStreamObjects(ArrayList<StreamObj> streamObjs) {
-        if (windowElements.size() >= windowSize) {
+        ArrayList<ISBEntry> newEntries = new ArrayList<>(streamObjs.size());
+        for (StreamObj streamObj : streamObjs) {
+            newEntries.add(new ISBEntry(streamObj, objId + newEntries.size())); // create new ISB entry
+        }
+        processSlide(objId, newEntries);
+    }
+
+    // Processes the slide of the stream starting at object firstId. newEntries hold the objects
+    // of the slide seen by this detector, with their ids in the stream; a detector that only
+    // sees part of the stream (see ShardedMCOD) gets a subset of the slide, possibly empty.
+    public void processSlide(long firstId, ArrayList<ISBEntry> newEntries) {
+        SlideEvent slideEvent = startSlide();
+        if (firstId > windowEnd) {
             // If the window is full, perform a slide
             doSlide();
             // Process expired entries
+            long start = phaseStart();
             processExpiredEntries(getExpiredEntries());
+            phaseEnd(Phase.EXPIRY, start);
         }
 
         // Process new entries
-        for (StreamObj streamObj : streamObjs) {
-            ISBEntry newEntry = new ISBEntry(streamObj, objId); // create new ISB entry
-            addEntry(newEntry); // add newEntry to window
-            processNewEntry(newEntry, true);
-
-            objId++; // update object identifier
+        if (isBatchMode()) {
+            // search the neighbors of the whole slide at once
+            prepareBatch(newEntries);
+            for (ISBEntry newEntry : newEntries) {
+                addEntry(newEntry); // add newEntry to window
+                processNewEntry(newEntry, true);
+            }
+            clearBatch();
+        } else {
+            for (ISBEntry newEntry : newEntries) {
+                addEntry(newEntry); // add newEntry to window
+                processNewEntry(newEntry, true);
+            }
+        }
+        if (!newEntries.isEmpty()) {
+            objId = newEntries.get(newEntries.size() - 1).id + 1; // update object identifier
         }
+        endSlide(slideEvent, firstId, newEntries.size());
 
 
         // DIAG ONLY -- DELETE
-        System.out.println("-------------------- MCOD baseline --------------------");
-        System.out.println("DIAG - Current stream object: " + (objId - 1));
-        System.out.println("DIAG - Total Exact MCs count: " + diagExactMCCount);
-        System.out.println("DIAG - Total Discarded MCs: " + diagDiscardedMCCount);
-        System.out.println("DIAG - #Times a point was added to an MC: " + diagAdditionsToMC);
-        System.out.println("DIAG - #Times a point was added to PD: " + diagAdditionsToPD);
-        System.out.println("DIAG - #Safe inliers detected: " + diagSafeInliersCount);
-        System.out.println("DIAG - Total -ACTIVE- MCs: " + setMC.size());
-        System.out.println("DIAG - Total -ACTIVE- PD List Population: " + ISB_PD.getSize());
-        System.out.println("DIAG - TEMP OUTLIER SET SIZE: " + getOutliersFound().size());
-        System.out.println("DIAG - TEMP Window size is: " + windowElements.size());
-        System.out.println("-------------------------------------------------------");
-    }
-
-    private ArrayList<ISBEntry> getExpiredEntries() {
-        ArrayList<ISBEntry> expiredEntries = new ArrayList<>();
-        for (ISBEntry entry : windowElements) {
-            // check if entry has expired
-            if (entry.id < windowStart) {
-                expiredEntries.add(entry);
-            } else {
-                break;
-            }
+        if (verbose) {
+            System.out.println("-------------------- MCOD baseline --------------------");
+            System.out.println("DIAG - Current stream object: " + (objId - 1));
+            System.out.println("DIAG - Total Exact MCs count: " + diagExactMCCount);
+            System.out.println("DIAG - Total Discarded MCs: " + diagDiscardedMCCount);
+            System.out.println("DIAG - #Times a point was added to an MC: " + diagAdditionsToMC);
+            System.out.println("DIAG - #Times a point was added to PD: " + diagAdditionsToPD);
+            System.out.println("DIAG - #Safe inliers detected: " + diagSafeInliersCount);
+            System.out.println("DIAG - Total -ACTIVE- MCs: " + setMC.size());
+            System.out.println("DIAG - Total -ACTIVE- PD List Population: " + ISB_PD.getSize());
+            System.out.println("DIAG - TEMP OUTLIER SET SIZE: " + getOutliersFound().size());
+            System.out.println("DIAG - TEMP Window size is: " + windowElements.size());
+            System.out.println("-------------------------------------------------------");
         }
-        return expiredEntries;
     }
 }
@@ -1,71 +1,39 @@
 package algorithms;
 
+import core.DistanceKernel;
+import core.EventQueue;
 import core.mcodbase.ISBIndex;
-import core.mcodbase.MTreeMicroClusters;
 import core.mcodbase.MicroCluster;
+import core.mcodbase.SlideProfiler;
+import core.mcodbase.SlideProfiler.Phase;
 import core.OutlierDetector;
+import core.WorkerCost;
+import core.index.SpatialIndex;
+import core.jfr.EventQueueDrainEvent;
+import core.jfr.MicroClusterCreatedEvent;
+import core.jfr.MicroClusterDissolvedEvent;
+import core.jfr.RangeQueryEvent;
+import core.jfr.SlideEvent;
 import core.mcodbase.ISBIndex.ISBEntry;
 import core.mcodbase.ISBIndex.ISBEntry.EntryType;
+import core.mcodbase.ISBIndex.ISBSearchResult;
+import core.mcodbase.ISBIndex.ISBSearchResults;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 public class MCODBase extends OutlierDetector<ISBEntry> {
-    protected static class EventItem implements Comparable<EventItem> {
-        public ISBEntry entry;
-        public Long timeStamp;
-
-        public EventItem(ISBEntry entry, Long timeStamp) {
-            this.entry = entry;
-            this.timeStamp = timeStamp;
-        }
-
-        @Override
-        public int compareTo(EventItem t) {
-            if (this.timeStamp > t.timeStamp) {
-                return +1;
-            } else if (this.timeStamp < t.timeStamp) {
-                return -1;
-            } else {
-                if (this.entry.id > t.entry.id)
-                    return +1;
-                else if (this.entry.id < t.entry.id)
-                    return -1;
-            }
-            return 0;
-        }
-    }
-
-    protected static class EventQueue {
-        public TreeSet<EventItem> setEvents;
-
-        public EventQueue() {
-            setEvents = new TreeSet<EventItem>();
-        }
-
-        public void insert(ISBEntry entry, Long expTime) {
-            setEvents.add(new EventItem(entry, expTime));
-        }
-
-        public EventItem findMin() {
-            if (setEvents.size() > 0) {
-                // events are sorted ascenting by expiration time
-                return setEvents.first();
-            }
-            return null;
-        }
-
-        public EventItem extractMin() {
-            EventItem e = findMin();
-            if (e != null) {
-                setEvents.remove(e);
-                return e;
-            }
-            return null;
-        }
-    }
-
     protected class SearchResultMC {
         public MicroCluster mc;
         public double distance;
@@ -76,13 +44,39 @@ public class MCODBase extends OutlierDetector<ISBEntry> {
         }
     }
 
+    // range search results are ordered by distance, ties by id, so that the order does not
+    // depend on the shape of the mtree; also used by MultiQueryMCOD
+    protected static final Comparator<SearchResultMC> MC_RESULT_ORDER =
+            Comparator.<SearchResultMC>comparingDouble(r -> r.distance).thenComparing(r -> r.mc.mcc.id);
+    protected static final Comparator<ISBSearchResult> PD_RESULT_ORDER =
+            Comparator.<ISBSearchResult>comparingDouble(r -> r.distance).thenComparing(r -> r.entry.id);
+
     protected int nRangeQueriesExecuted = 0;
 
+    // In batch mode the neighbors of all the entries of a slide are searched in one pass
+    // before the entries are processed; see prepareBatch.
+    protected boolean m_batchMode = false;
+    protected int m_threads = 1;
+    private ForkJoinPool searchPool = null;
+    // cost of the searches run on searchPool
+    private final WorkerCost searchCost = new WorkerCost();
+    // chunks of fewer queries are not worth a task
+    private static final int MIN_CHUNK_SIZE = 16;
+    // entries of the slide being processed in batch mode, in arrival order
+    private ArrayList<ISBEntry> batchEntries;
+    // micro-clusters within 3R/2 of each batch entry at the start of the slide
+    private ArrayList<Vector<SearchResultMC>> batchMCs;
+    // entries of PD within 3R/2 of each batch entry at the start of the slide; null for
+    // entries that are certain to join a micro-cluster
+    private ArrayList<Vector<ISBSearchResult>> batchPD;
+    // earlier entries of the slide within 3R/2 of each batch entry
+    private ArrayList<ArrayList<ISBSearchResult>> batchEarlier;
+
     // object identifier increments with each new data stream object
     protected Long objId;
-    protected EventQueue eventQueue;
-    // MTree index of micro-clusters
-    protected MTreeMicroClusters mtreeMC;
+    protected EventQueue<ISBEntry> eventQueue;
+    // spatial index of micro-clusters, by their centers
+    protected SpatialIndex<MicroCluster> mcIndex;
     // set of micro-clusters (for trace)
     protected TreeSet<MicroCluster> setMC;
     // Entries treated as new entries when a mc removed
@@ -91,9 +85,22 @@ public class MCODBase extends OutlierDetector<ISBEntry> {
     protected ISBIndex ISB_PD;
 
     protected double m_radius;
+    // squared R and R/2, compared against squared distances
+    protected double m_radiusSq;
+    protected double m_halfRadiusSq;
+    // distances closer than this to a triangle inequality bound are computed anyway
+    protected double m_triangleSlack;
     protected int m_k;
     protected double m_theta = 1.0;
 
+    // time per phase of the slides, null unless profiling
+    protected SlideProfiler profiler = null;
+    // counted for the JFR slide event
+    private int slideMCsCreated;
+    private int slideMCsDissolved;
+    private int slideEventsDrained;
+    protected int slideSafeInliersEvicted;
+
     // statistics
     public int m_nBothInlierOutlier;
     public int m_nOnlyInlier;
@@ -103,6 +110,9 @@ public class MCODBase extends OutlierDetector<ISBEntry> {
         super(windowSize, slideSize);
 
         m_radius = radius;
+        m_radiusSq = radius * radius;
+        m_halfRadiusSq = (radius / 2) * (radius / 2);
+        m_triangleSlack = 1e-9 * radius;
         m_k = k;
 
         objId = FIRST_OBJ_ID; // init object identifier
@@ -111,9 +121,10 @@ public class MCODBase extends OutlierDetector<ISBEntry> {
         // create helper sets for micro-cluster management
         setMC = new TreeSet<MicroCluster>();
         // micro-cluster index
-        mtreeMC = new MTreeMicroClusters();
-        // create event queue
-        eventQueue = new EventQueue();
+        mcIndex = newMCIndex("mtree");
+        // create event queue; expiration times are due at the windowEnd of a slide,
+        // so the queue is bucketed by slide starting from the first windowEnd
+        eventQueue = new EventQueue<>(windowSize, slideSize, windowSize / slideSize + 2);
 
         // init statistics
         m_nBothInlierOutlier = 0;
@@ -173,8 +184,57 @@ public class MCODBase extends OutlierDetector<ISBEntry> {
         evaluateAsOutlier(entry);
     }
 
+    // Adds mc to q.Rmc and q to the PD entries referencing mc; distance is the distance of q
+    // to the center of mc. Shared with MultiQueryMCOD, whose PD entries reference its
+    // micro-clusters the same way.
+    protected static void addToRmc(ISBEntry q, MicroCluster mc, double distance) {
+        if (!q.Rmc.add(mc)) {
+            // q.Rmc holds an earlier micro-cluster with the same center; keep the current one,
+            // and drop q from the references of the earlier one so that it can be collected
+            MicroCluster earlier = q.Rmc.ceiling(mc);
+            if (earlier != mc) {
+                earlier.removePDRef(q);
+                q.Rmc.remove(earlier);
+                q.Rmc.add(mc);
+            }
+        }
+        mc.addPDRef(q, distance);
+    }
+
+    // Removes q from set PD and from the PD entries referencing the micro-clusters of q.Rmc
+    protected void removeFromPD(ISBEntry q) {
+        ISB_PD.remove(q);
+        removePDRefs(q);
+    }
+
+    // Drops q from the PD entries referencing the micro-clusters of q.Rmc, and clears q.Rmc
+    protected static void removePDRefs(ISBEntry q) {
+        for (MicroCluster mc : q.Rmc) {
+            mc.removePDRef(q);
+        }
+        q.Rmc.clear();
+    }
+
+    // Returns the entries of set PD that reference mc and lie within R of entry, where
+    // entryDist <= R/2 is the distance of entry to the center of mc. The stored distances of
+    // the PD entries to the center decide most of them by the triangle inequality.
+    protected ArrayList<ISBEntry> getPDNeighborsInMC(MicroCluster mc, ISBEntry entry, double entryDist) {
+        ArrayList<ISBEntry> neighbors = new ArrayList<>();
+        for (Map.Entry<ISBEntry, Double> ref : mc.pdRefs.entrySet()) {
+            double qDist = ref.getValue();
+            if (qDist - entryDist > m_radius + m_triangleSlack) {
+                continue;
+            }
+            ISBEntry q = ref.getKey();
+            if (qDist + entryDist < m_radius - m_triangleSlack || isWithinRadius(q, entry)) {
+                neighbors.add(q);
+            }
+        }
+        return neighbors;
+    }
+
     protected void addMicroCluster(MicroCluster mc) {
-        mtreeMC.add(mc);
+        mcIndex.add(mc);
         setMC.add(mc);
     }
 
@@ -185,15 +245,30 @@ public class MCODBase extends OutlierDetector<ISBEntry> {
     }
 
     protected void removeMicroCluster(MicroCluster mc) throws CorruptedDataStateException {
-        boolean mtreeRemoval = mtreeMC.remove(mc);
+        boolean indexRemoval = mcIndex.remove(mc);
         boolean setMCRemoval = setMC.remove(mc);
 
-        if (mtreeRemoval != setMCRemoval) {
-            throw new CorruptedDataStateException("The target mc was removed from setMC but was not found in M-Tree");
+        if (indexRemoval != setMCRemoval) {
+            throw new CorruptedDataStateException("The target mc was removed from setMC but was not found in the index");
+        }
+    }
+
+    // Whether entry counts towards the outliers and statistics reported by this detector;
+    // the shards of ShardedMCOD also hold copies of entries owned by other shards.
+    protected boolean isReported(ISBEntry entry) {
+        return true;
+    }
+
+    @Override
+    public void evaluateAsOutlier(ISBEntry entry) {
+        if (isReported(entry)) {
+            super.evaluateAsOutlier(entry);
         }
     }
 
     protected void updateStatistics(ISBEntry entry) {
+        if (!isReported(entry))
+            return;
         if ((entry.nInlier > 0) && (entry.nOutlier > 0))
             m_nBothInlierOutlier++;
         else if (entry.nInlier > 0)
@@ -210,6 +285,8 @@ public class MCODBase extends OutlierDetector<ISBEntry> {
 
         // add counters of non expired entries still in window
         for (ISBEntry entry : windowElements) {
+            if (!isReported(entry))
+                continue;
             if ((entry.nInlier > 0) && (entry.nOutlier > 0))
                 nBothInlierOutlier++;
             else if (entry.nInlier > 0)
@@ -226,27 +303,436 @@ public class MCODBase extends OutlierDetector<ISBEntry> {
         return results;
     }
 
-    protected double getEuclideanDist(ISBEntry n1, ISBEntry n2)
-    {
-        double diff;
-        double sum = 0;
-        int d = n1.obj.dimensions();
-        for (int i = 0; i < d; i++) {
-            diff = n1.obj.get(i) - n2.obj.get(i);
-            sum += Math.pow(diff, 2);
+    // The spatial indexes of set PD and of the micro-clusters: mtree, grid, kd or vp; see
+    // SpatialIndex.create. Must be set before the first slide is processed.
+    public void setPDIndex(String indexType) {
+        ISB_PD = new ISBIndex(m_radius, m_k, indexType);
+    }
+
+    public void setMCIndex(String indexType) {
+        mcIndex = newMCIndex(indexType);
+    }
+
+    private SpatialIndex<MicroCluster> newMCIndex(String indexType) {
+        return SpatialIndex.create(indexType, m_radius, (MicroCluster mc) -> mc.mcc.obj);
+    }
+
+    // Records the time of the phases of each slide in profiler; null turns profiling off
+    public void setProfiler(SlideProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public SlideProfiler getProfiler() {
+        return profiler;
+    }
+
+    // Start time of a phase, for phaseEnd; the clock is only read when profiling
+    protected long phaseStart() {
+        return profiler != null ? System.nanoTime() : 0L;
+    }
+
+    protected void phaseEnd(Phase phase, long start) {
+        if (profiler != null) {
+            profiler.add(phase, System.nanoTime() - start);
+        }
+    }
+
+    // Starts the profiling and the JFR event of a slide, ended by endSlide
+    protected SlideEvent startSlide() {
+        if (profiler != null) {
+            profiler.startSlide();
+        }
+        slideMCsCreated = 0;
+        slideMCsDissolved = 0;
+        slideEventsDrained = 0;
+        slideSafeInliersEvicted = 0;
+        SlideEvent event = new SlideEvent();
+        event.begin();
+        return event;
+    }
+
+    protected void endSlide(SlideEvent event, long firstId, int nObjects) {
+        if (profiler != null) {
+            profiler.endSlide();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.detector = getClass().getSimpleName();
+            event.firstObjectId = firstId;
+            event.objects = nObjects;
+            event.microClustersCreated = slideMCsCreated;
+            event.microClustersDissolved = slideMCsDissolved;
+            event.eventsDrained = slideEventsDrained;
+            event.safeInliersEvicted = slideSafeInliersEvicted;
+            event.activeMicroClusters = setMC.size();
+            event.pdSize = ISB_PD.getSize();
+            event.commit();
+        }
+    }
+
+    // The JFR events below are begun by the caller, so that they time the whole operation;
+    // their fields are only filled when they are recorded
+
+    protected void commitRangeQuery(RangeQueryEvent event, String index, double range, int queries,
+                                    int indexSize, int candidates, int results) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.index = index;
+            event.range = range;
+            event.queries = queries;
+            event.indexSize = indexSize;
+            event.candidates = candidates;
+            event.results = results;
+            event.commit();
+        }
+    }
+
+    protected void commitMCCreated(MicroClusterCreatedEvent event, MicroCluster mc) {
+        slideMCsCreated++;
+        event.end();
+        if (event.shouldCommit()) {
+            event.centerId = mc.mcc.id;
+            event.members = mc.getEntriesCount();
+            event.commit();
+        }
+    }
+
+    protected void commitMCDissolved(MicroClusterDissolvedEvent event, MicroCluster mc) {
+        slideMCsDissolved++;
+        event.end();
+        if (event.shouldCommit()) {
+            event.centerId = mc.mcc.id;
+            event.members = mc.entries.size();
+            event.commit();
+        }
+    }
+
+    protected void commitEventQueueDrain(EventQueueDrainEvent event, int drained, int outliers) {
+        slideEventsDrained += drained;
+        event.end();
+        // most expiries find nothing due
+        if (drained > 0 && event.shouldCommit()) {
+            event.drained = drained;
+            event.outliers = outliers;
+            event.commit();
+        }
+    }
+
+    public void setBatchMode(boolean batchMode) {
+        m_batchMode = batchMode;
+    }
+
+    // Runs the range searches of batch mode on the given number of threads. More than one
+    // thread implies batch mode: only the searches run in parallel, the entries are still
+    // processed one by one, so the results do not depend on the number of threads.
+    public void setThreads(int threads) {
+        close();
+        m_threads = Math.max(threads, 1);
+        searchPool = m_threads > 1 ? new ForkJoinPool(m_threads) : null;
+    }
+
+    public WorkerCost getWorkerCost() {
+        return searchPool != null ? searchCost : null;
+    }
+
+    // Shuts down the threads of the searches; a later slide runs them on the calling thread
+    public void close() {
+        if (searchPool != null) {
+            searchPool.shutdown();
+            searchPool = null;
+        }
+    }
+
+    protected boolean isBatchMode() {
+        return m_batchMode || m_threads > 1;
+    }
+
+    // Searches the neighbors of all the entries of a slide against the state at the start of
+    // the slide, plus a self-join of the slide. While the entries are then processed in
+    // order, findMCsInRange and findPDInRange merge these results with the micro-clusters
+    // created and the PD entries inserted earlier in the slide, which gives the same results
+    // as searching the indexes at that time. Entries only join, and never leave, micro-clusters
+    // while a slide arrives, so the results found at the start of the slide stay valid apart
+    // from PD entries that joined a micro-cluster, which are filtered out.
+    // The indexes are only read here, so the searches can run in parallel.
+    protected void prepareBatch(ArrayList<ISBEntry> entries) {
+        double range = 1.5 * m_radius;
+        batchEntries = entries;
+
+        ArrayList<MicroCluster> dummies = new ArrayList<>(entries.size());
+        for (ISBEntry entry : entries) {
+            dummies.add(new MicroCluster(entry));
+        }
+        long start = phaseStart();
+        RangeQueryEvent mcEvent = new RangeQueryEvent();
+        mcEvent.begin();
+        List<SpatialIndex.Results<MicroCluster>> foundMCs =
+                searchInChunks(dummies, chunk -> mcIndex.rangeSearchAll(chunk, range));
+        phaseEnd(Phase.MC_SEARCH, start);
+        int mcCandidates = 0;
+        for (SpatialIndex.Results<MicroCluster> found : foundMCs) {
+            mcCandidates += found.candidates;
+        }
+        commitRangeQuery(mcEvent, "MC", range, entries.size(), mcIndex.size(), mcCandidates, countResults(foundMCs));
+
+        batchMCs = new ArrayList<>(entries.size());
+        ArrayList<ISBEntry> pdQueries = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            Vector<SearchResultMC> results = new Vector<>();
+            boolean joinsMC = false;
+            for (SpatialIndex.Result<MicroCluster> q : foundMCs.get(i)) {
+                results.add(new SearchResultMC(q.data, q.distance));
+                // micro-clusters are not removed while the slide arrives
+                joinsMC |= q.distance <= m_radius / 2;
+            }
+            batchMCs.add(results);
+            if (!joinsMC) {
+                pdQueries.add(entries.get(i));
+            }
+        }
+
+        start = phaseStart();
+        RangeQueryEvent pdEvent = new RangeQueryEvent();
+        pdEvent.begin();
+        List<ISBSearchResults> foundPD = searchInChunks(pdQueries, chunk -> ISB_PD.rangeSearchAll(chunk, range));
+        int pdCandidates = 0;
+        for (ISBSearchResults found : foundPD) {
+            pdCandidates += found.candidates;
+        }
+        commitRangeQuery(pdEvent, "PD", range, pdQueries.size(), ISB_PD.getSize(), pdCandidates, countResults(foundPD));
+        batchPD = new ArrayList<>(entries.size());
+        int next = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            if (next < pdQueries.size() && pdQueries.get(next) == entries.get(i)) {
+                batchPD.add(foundPD.get(next++));
+            } else {
+                batchPD.add(null);
+            }
+        }
+        phaseEnd(Phase.PD_SEARCH, start);
+
+        start = phaseStart();
+        batchEarlier = selfJoin(entries, range);
+        phaseEnd(Phase.SELF_JOIN, start);
+    }
+
+    private static int countResults(List<? extends List<?>> results) {
+        int count = 0;
+        for (List<?> found : results) {
+            count += found.size();
+        }
+        return count;
+    }
+
+    protected void clearBatch() {
+        batchEntries = null;
+        batchMCs = null;
+        batchPD = null;
+        batchEarlier = null;
+    }
+
+    // Applies search to consecutive chunks of queries, on the search pool if there is one,
+    // and returns the results of all the chunks in query order.
+    private <Q, R> List<R> searchInChunks(List<Q> queries, Function<List<Q>, List<R>> search) {
+        if (searchPool == null || queries.size() < 2 * MIN_CHUNK_SIZE) {
+            return search.apply(queries);
+        }
+        ArrayList<Callable<List<R>>> tasks = new ArrayList<>();
+        for (List<Q> chunk : chunks(queries)) {
+            tasks.add(searchCost.wrap(() -> search.apply(chunk)));
+        }
+        ArrayList<R> results = new ArrayList<>(queries.size());
+        for (List<R> chunkResults : invokeAll(tasks)) {
+            results.addAll(chunkResults);
+        }
+        return results;
+    }
+
+    // Splits list into a few chunks per thread, so that uneven chunks balance out
+    private <T> ArrayList<List<T>> chunks(List<T> list) {
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (list.size() + 4 * m_threads - 1) / (4 * m_threads));
+        ArrayList<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += chunkSize) {
+            chunks.add(list.subList(from, Math.min(from + chunkSize, list.size())));
         }
-        return Math.sqrt(sum);
+        return chunks;
+    }
+
+    private <R> ArrayList<R> invokeAll(List<Callable<R>> tasks) {
+        ArrayList<R> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<R> future : searchPool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while searching the neighbors of a slide", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Neighbor search failed", e.getCause());
+        }
+        return results;
+    }
+
+    // A pair of entries found by selfJoin: result holds the earlier entry of the pair and
+    // later is the position of the other one
+    private static class JoinedPair {
+        final int later;
+        final ISBSearchResult result;
+
+        JoinedPair(int later, ISBSearchResult result) {
+            this.later = later;
+            this.result = result;
+        }
+    }
+
+    // Pairs of entries within range of each other, found by sorting the entries along the
+    // dimension with the largest spread and sweeping a window of width range over it.
+    // For each entry, the result holds the entries that precede it in the list.
+    private ArrayList<ArrayList<ISBSearchResult>> selfJoin(ArrayList<ISBEntry> entries, double range) {
+        int n = entries.size();
+        ArrayList<ArrayList<ISBSearchResult>> earlier = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            earlier.add(new ArrayList<>());
+        }
+        if (n < 2) {
+            return earlier;
+        }
+
+        int dims = entries.get(0).getValues().length;
+        int sweepDim = 0;
+        double maxSpread = -1;
+        for (int d = 0; d < dims; d++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (ISBEntry entry : entries) {
+                min = Math.min(min, entry.getValues()[d]);
+                max = Math.max(max, entry.getValues()[d]);
+            }
+            if (max - min > maxSpread) {
+                maxSpread = max - min;
+                sweepDim = d;
+            }
+        }
+
+        final int dim = sweepDim;
+        ArrayList<Integer> order = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingDouble(i -> entries.get(i).getValues()[dim]));
+
+        // each sweep position is joined with the positions after it, so the positions can be
+        // swept independently
+        ArrayList<Integer> positions = new ArrayList<>(n);
+        for (int a = 0; a < n; a++) {
+            positions.add(a);
+        }
+        List<JoinedPair> pairs = searchInChunks(positions, chunk -> {
+            ArrayList<JoinedPair> found = new ArrayList<>();
+            for (int a : chunk) {
+                int i = order.get(a);
+                double[] vi = entries.get(i).getValues();
+                for (int b = a + 1; b < n; b++) {
+                    int j = order.get(b);
+                    double[] vj = entries.get(j).getValues();
+                    if (vj[dim] - vi[dim] > range) {
+                        break;
+                    }
+                    double distance = DistanceKernel.distance(vi, vj, range);
+                    if (distance <= range) {
+                        if (i < j) {
+                            found.add(new JoinedPair(j, new ISBSearchResult(entries.get(i), distance)));
+                        } else {
+                            found.add(new JoinedPair(i, new ISBSearchResult(entries.get(j), distance)));
+                        }
+                    }
+                }
+            }
+            return found;
+        });
+        for (JoinedPair pair : pairs) {
+            earlier.get(pair.later).add(pair.result);
+        }
+        return earlier;
+    }
+
+    // Position of entry in the slide being processed in batch mode, or -1
+    private int batchIndexOf(ISBEntry entry) {
+        if (batchEntries == null) {
+            return -1;
+        }
+        // the entries of a slide are in id order, but the ids of a shard are not contiguous
+        int idx = Collections.binarySearch(batchEntries, entry);
+        if (idx < 0 || batchEntries.get(idx) != entry) {
+            return -1;
+        }
+        return idx;
+    }
+
+    // Micro-clusters within 3R/2 of entry, ascending by distance
+    protected Vector<SearchResultMC> findMCsInRange(ISBEntry entry) {
+        int idx = batchIndexOf(entry);
+        if (idx < 0) {
+            return RangeSearchMC(entry, 1.5 * m_radius);
+        }
+        Vector<SearchResultMC> results = new Vector<>(batchMCs.get(idx));
+        for (ISBSearchResult sr : batchEarlier.get(idx)) {
+            // micro-clusters created during the slide are centered at entries of the slide
+            MicroCluster mc = sr.entry.mc;
+            if (mc != null && mc.mcc == sr.entry) {
+                results.add(new SearchResultMC(mc, sr.distance));
+            }
+        }
+        results.sort(MC_RESULT_ORDER);
+        return results;
+    }
+
+    // Entries of PD within 3R/2 of entry, ascending by distance
+    protected Vector<ISBSearchResult> findPDInRange(ISBEntry entry) {
+        int idx = batchIndexOf(entry);
+        if (idx < 0 || batchPD.get(idx) == null) {
+            long start = phaseStart();
+            RangeQueryEvent event = new RangeQueryEvent();
+            event.begin();
+            ISBSearchResults results = ISB_PD.rangeSearch(entry, 1.5 * m_radius);
+            results.sort(PD_RESULT_ORDER);
+            phaseEnd(Phase.PD_SEARCH, start);
+            commitRangeQuery(event, "PD", 1.5 * m_radius, 1, ISB_PD.getSize(), results.candidates, results.size());
+            return results;
+        }
+        Vector<ISBSearchResult> results = new Vector<>();
+        for (ISBSearchResult sr : batchPD.get(idx)) {
+            if (ISB_PD.contains(sr.entry)) {
+                results.add(sr);
+            }
+        }
+        for (ISBSearchResult sr : batchEarlier.get(idx)) {
+            if (ISB_PD.contains(sr.entry)) {
+                results.add(sr);
+            }
+        }
+        results.sort(PD_RESULT_ORDER);
+        return results;
+    }
+
+    protected boolean isWithinRadius(ISBEntry n1, ISBEntry n2) {
+        return DistanceKernel.isWithinSquaredDistance(n1.getValues(), n2.getValues(), m_radiusSq);
     }
 
     protected Vector<SearchResultMC> RangeSearchMC(ISBEntry newEntry, double radius) {
+        long start = phaseStart();
+        RangeQueryEvent event = new RangeQueryEvent();
+        event.begin();
         Vector<SearchResultMC> results = new Vector<SearchResultMC>();
         // create a dummy mc in order to search w.r.t. newEntry
         MicroCluster dummy = new MicroCluster(newEntry);
-        // query results are returned ascending by distance
-        MTreeMicroClusters.Query query = mtreeMC.getNearestByRange(dummy, radius);
-        for (MTreeMicroClusters.ResultItem q : query) {
+        SpatialIndex.Results<MicroCluster> found = mcIndex.rangeSearch(dummy, radius);
+        for (SpatialIndex.Result<MicroCluster> q : found) {
             results.add(new SearchResultMC(q.data, q.distance));
         }
+        results.sort(MC_RESULT_ORDER);
+        phaseEnd(Phase.MC_SEARCH, start);
+        commitRangeQuery(event, "MC", radius, 1, mcIndex.size(), found.candidates, results.size());
         return results;
     }
 }
@@ -0,0 +1,678 @@
+package algorithms;
+
+import core.DistanceKernel;
+import core.Outlier;
+import core.OutlierDetector;
+import core.StreamDetector;
+import core.StreamObj;
+import core.index.SpatialIndex;
+import core.mcodbase.ISBIndex;
+import core.mcodbase.ISBIndex.ISBEntry;
+import core.mcodbase.ISBIndex.ISBSearchResult;
+import core.mcodbase.MicroCluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Vector;
+
+/*
+ * Exact outlier detection for several (R, k, W, slide) queries over one stream.
+ *
+ * The windows of the queries all end at the newest object, so they are nested in the largest
+ * one; the queries share the objects of that window. Each query has its own window start,
+ * which advances by its own slide.
+ *
+ * As in MCOD, objects close together are grouped in micro-clusters, here of radius Rmin/2
+ * for the smallest R of the queries. The members of a micro-cluster are pairwise within
+ * Rmin, hence neighbors for every query, and they are inliers of every query whose window
+ * holds more than k of them. A micro-cluster is formed when this holds for all the queries,
+ * and dissolved as soon as it fails for one of them, its members being processed again as
+ * new objects. A new object within Rmin/2 of the center of a micro-cluster joins it without
+ * a range search.
+ *
+ * The other objects make up set PD, whose index is searched once per new object with the
+ * largest R; each neighbor found is counted by the queries whose R covers its distance and
+ * whose window still holds it. Each PD entry keeps, per query, the number of neighbors that
+ * arrived after it and the ids of the k most recent neighbors that arrived before it. That is
+ * enough to tell whether it has k neighbors in the window until it expires.
+ *
+ * The stream is processed in slides of slideSize objects, so the slide of each query must be
+ * a multiple of it. The outliers of each query are those a separate MCOD with its R, k, W
+ * and slide reports. The statistics may differ in the objects counted as both inlier and
+ * outlier, since the objects reprocessed when a micro-cluster is dissolved are counted in
+ * their transient state, and the micro-clusters of MCOD, of radius R/2, are dissolved at
+ * other times than these.
+ */
+public class MultiQueryMCOD extends OutlierDetector<ISBEntry> implements StreamDetector {
+    private static final long[] NO_IDS = new long[0];
+
+    private final double[] radii;
+    private final int[] ks;
+    private final int[] windowSizes;
+    private final int[] slideSizes;
+    private final int nQueries;
+    private final double maxRadius;
+    // radius of the micro-clusters, half the smallest R
+    private final double mcRadius;
+    // the PD entries and micro-clusters within maxRadius of the members of a micro-cluster
+    // lie within searchRadius of its center
+    private final double searchRadius;
+    // distances closer than this to a triangle inequality bound are computed anyway
+    private final double triangleSlack;
+    private int maxK;
+
+    // index of the objects not in any micro-cluster
+    private ISBIndex index;
+    // micro-clusters, by their centers
+    private SpatialIndex<MicroCluster> mcIndex;
+    private int nMicroClusters = 0;
+    // members of the micro-cluster being dissolved
+    private Set<ISBEntry> entriesReinsert = new HashSet<>();
+    // object identifier increments with each new data stream object
+    private Long objId;
+    private int nRangeQueriesExecuted = 0;
+    // ids of the neighbors found for each query for the entry being processed
+    private final long[][] foundIds;
+
+    // per query; windowStart and windowEnd of the detector span the union of the windows
+    private final long[] queryWindowStart;
+    private final long[] queryWindowEnd;
+    private final ArrayList<TreeSet<Outlier<ISBEntry>>> outliersFound;
+    // PD entries that are inliers of a query with fewer than k succeeding neighbors, which
+    // may turn into outliers as their preceding neighbors leave the window of the query;
+    // entries that became safe, turned into outliers, joined a micro-cluster or left the
+    // window are dropped when the list is checked
+    private final ArrayList<ArrayList<QueryEntry>> unsafeInliers;
+    private final int[] m_nBothInlierOutlier;
+    private final int[] m_nOnlyInlier;
+    private final int[] m_nOnlyOutlier;
+
+    // An entry with the neighbor counters and the state of every query
+    static class QueryEntry extends ISBEntry {
+        final int[] countAfter;
+        // ids of the most recent preceding neighbors, ascending, at most k of the query
+        final long[][] precIds;
+        final boolean[] inlier;
+        // whether the entry is in the unsafe inliers of the query
+        final boolean[] unsafe;
+        final int[] nInlier;
+        final int[] nOutlier;
+
+        QueryEntry(StreamObj obj, Long id, int nQueries) {
+            super(obj, id);
+            countAfter = new int[nQueries];
+            precIds = new long[nQueries][];
+            Arrays.fill(precIds, NO_IDS);
+            inlier = new boolean[nQueries];
+            unsafe = new boolean[nQueries];
+            nInlier = new int[nQueries];
+            nOutlier = new int[nQueries];
+        }
+    }
+
+    // A micro-cluster with the number of its members in the window of every query
+    static class QueryCluster extends MicroCluster {
+        final int[] nInWindow;
+
+        QueryCluster(QueryEntry center, int nQueries) {
+            super(center);
+            nInWindow = new int[nQueries];
+        }
+    }
+
+    // Queries over the same window
+    public MultiQueryMCOD(int windowSize, int slideSize, double[] radii, int[] ks) {
+        this(slideSize, radii, ks, filled(radii.length, windowSize), filled(radii.length, slideSize));
+    }
+
+    public MultiQueryMCOD(int slideSize, double[] radii, int[] ks, int[] windowSizes, int[] slideSizes) {
+        super(max(windowSizes), slideSize);
+        if (radii.length == 0 || radii.length != ks.length
+                || radii.length != windowSizes.length || radii.length != slideSizes.length) {
+            throw new IllegalArgumentException("Expected as many radii, k values, windows and slides, and at least one");
+        }
+        this.radii = radii.clone();
+        this.ks = ks.clone();
+        this.windowSizes = windowSizes.clone();
+        this.slideSizes = slideSizes.clone();
+        this.nQueries = radii.length;
+        this.queryWindowStart = new long[nQueries];
+        this.queryWindowEnd = new long[nQueries];
+        double max = 0;
+        double min = Double.POSITIVE_INFINITY;
+        for (int q = 0; q < nQueries; q++) {
+            if (slideSizes[q] <= 0 || slideSizes[q] % slideSize != 0) {
+                throw new IllegalArgumentException("The slide of query " + q + " (" + slideSizes[q]
+                        + ") is not a multiple of the slide size " + slideSize);
+            }
+            max = Math.max(max, radii[q]);
+            min = Math.min(min, radii[q]);
+            maxK = Math.max(maxK, ks[q]);
+            queryWindowStart[q] = FIRST_OBJ_ID;
+            queryWindowEnd[q] = windowSizes[q];
+        }
+        this.maxRadius = max;
+        this.mcRadius = min / 2;
+        this.searchRadius = maxRadius + mcRadius;
+        this.triangleSlack = 1e-9 * maxRadius;
+        this.objId = FIRST_OBJ_ID;
+        this.index = new ISBIndex(maxRadius, maxK);
+        this.mcIndex = newMCIndex("mtree");
+        this.foundIds = new long[nQueries][64];
+
+        outliersFound = new ArrayList<>(nQueries);
+        unsafeInliers = new ArrayList<>(nQueries);
+        for (int q = 0; q < nQueries; q++) {
+            outliersFound.add(new TreeSet<>());
+            unsafeInliers.add(new ArrayList<>());
+        }
+        m_nBothInlierOutlier = new int[nQueries];
+        m_nOnlyInlier = new int[nQueries];
+        m_nOnlyOutlier = new int[nQueries];
+
+        System.out.println("Init MultiQueryMCOD:");
+        System.out.println("   window_size: " + windowSize);
+        System.out.println("   slide_size: " + slideSize);
+        for (int q = 0; q < nQueries; q++) {
+            System.out.println("   query " + q + ": radius " + radii[q] + ", k " + ks[q]
+                    + ", window " + windowSizes[q] + ", slide " + slideSizes[q]);
+        }
+    }
+
+    private static int[] filled(int length, int value) {
+        int[] values = new int[length];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    // Parses queries given as R:k pairs separated by commas, e.g. "20:30,25:30,20:50", into
+    // the radii and the k values
+    public static MultiQueryMCOD fromQueries(int windowSize, int slideSize, String queries) {
+        return fromQueries(windowSize, slideSize, queries, null);
+    }
+
+    // As above, with every query evaluated over each of the windows given as W or W:slide
+    // separated by commas, e.g. "10000,50000:5000"; a window without slide slides by
+    // slideSize. windows may be null for a single window of windowSize.
+    public static MultiQueryMCOD fromQueries(int windowSize, int slideSize, String queries, String windows) {
+        String[] pairs = queries.split(",");
+        String[] horizons = windows != null ? windows.split(",") : new String[] {Integer.toString(windowSize)};
+        int n = pairs.length * horizons.length;
+        double[] radii = new double[n];
+        int[] ks = new int[n];
+        int[] windowSizes = new int[n];
+        int[] slideSizes = new int[n];
+        int q = 0;
+        for (String horizon : horizons) {
+            String[] window = horizon.split(":");
+            if (window.length > 2) {
+                throw new IllegalArgumentException("Expected a window as W or W:slide, got " + horizon);
+            }
+            for (String pair : pairs) {
+                String[] parts = pair.split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Expected a query as R:k, got " + pair);
+                }
+                radii[q] = Double.parseDouble(parts[0].trim());
+                ks[q] = Integer.parseInt(parts[1].trim());
+                windowSizes[q] = Integer.parseInt(window[0].trim());
+                slideSizes[q] = window.length == 2 ? Integer.parseInt(window[1].trim()) : slideSize;
+                q++;
+            }
+        }
+        return new MultiQueryMCOD(slideSize, radii, ks, windowSizes, slideSizes);
+    }
+
+    // The spatial indexes of set PD and of the micro-clusters: mtree, grid, kd or vp; see
+    // SpatialIndex.create. Must be set before the first slide is processed.
+    public void setPDIndex(String indexType) {
+        index = new ISBIndex(maxRadius, maxK, indexType);
+    }
+
+    public void setMCIndex(String indexType) {
+        mcIndex = newMCIndex(indexType);
+    }
+
+    private SpatialIndex<MicroCluster> newMCIndex(String indexType) {
+        return SpatialIndex.create(indexType, maxRadius, (MicroCluster mc) -> mc.mcc.obj);
+    }
+
+    public int getQueryCount() {
+        return nQueries;
+    }
+
+    public double getRadius(int query) {
+        return radii[query];
+    }
+
+    public int getK(int query) {
+        return ks[query];
+    }
+
+    public int getWindowSize(int query) {
+        return windowSizes[query];
+    }
+
+    public int getSlideSize(int query) {
+        return slideSizes[query];
+    }
+
+    // StreamDetector entry point
+    @Override
+    public void processNewStreamObjects(ArrayList<StreamObj> streamObjs) {
+        boolean[] slid = new boolean[nQueries];
+        boolean anySlid = false;
+        for (int q = 0; q < nQueries; q++) {
+            if (objId > queryWindowEnd[q]) {
+                // If the window of the query is full, perform a slide
+                queryWindowStart[q] += slideSizes[q];
+                queryWindowEnd[q] += slideSizes[q];
+                slid[q] = true;
+                anySlid = true;
+            }
+        }
+        if (anySlid) {
+            processExpiredEntries(slid);
+        }
+
+        for (StreamObj streamObj : streamObjs) {
+            QueryEntry newEntry = new QueryEntry(streamObj, objId, nQueries);
+            objId++;
+            windowElements.add(newEntry);
+            processNewEntry(newEntry, true);
+        }
+
+        if (verbose) {
+            System.out.println("------------------- MultiQueryMCOD --------------------");
+            System.out.println("DIAG - Current stream object: " + (objId - 1));
+            for (int q = 0; q < nQueries; q++) {
+                System.out.println("DIAG - Query " + q + " TEMP OUTLIER SET SIZE: " + outliersFound.get(q).size());
+            }
+            System.out.println("DIAG - Total -ACTIVE- MCs: " + nMicroClusters);
+            System.out.println("DIAG - Total -ACTIVE- PD List Population: " + index.getSize());
+            System.out.println("DIAG - TEMP Window size is: " + windowElements.size());
+            System.out.println("-------------------------------------------------------");
+        }
+    }
+
+    // Processes entry, a new object, or a member of a dissolved micro-cluster if not isNewEntry
+    private void processNewEntry(QueryEntry entry, boolean isNewEntry) {
+        List<SpatialIndex.Result<MicroCluster>> nearMCs = mcIndex.rangeSearch(new MicroCluster(entry), searchRadius);
+        SpatialIndex.Result<MicroCluster> closest = null;
+        for (SpatialIndex.Result<MicroCluster> r : nearMCs) {
+            if (closest == null || r.distance < closest.distance
+                    || (r.distance == closest.distance && r.data.mcc.id < closest.data.mcc.id)) {
+                closest = r;
+            }
+        }
+
+        if (closest != null && closest.distance <= mcRadius) {
+            QueryCluster mc = (QueryCluster) closest.data;
+            mc.addEntry(entry);
+            joinMicroCluster(entry, mc);
+            // the PD entries around the micro-cluster count entry as a neighbor
+            for (Map.Entry<ISBEntry, Double> ref : mc.pdRefs.entrySet()) {
+                QueryEntry q = (QueryEntry) ref.getKey();
+                if ((isNewEntry || entriesReinsert.contains(q))
+                        && ref.getValue() - closest.distance <= maxRadius + triangleSlack) {
+                    double distance = DistanceKernel.distance(q.getValues(), entry.getValues(), maxRadius);
+                    addNeighbor(q, entry, distance);
+                }
+            }
+            return;
+        }
+
+        // No close enough micro-cluster found, search set PD
+        nRangeQueriesExecuted++;
+        Vector<ISBSearchResult> results = index.rangeSearch(entry, searchRadius);
+        results.sort(MCODBase.PD_RESULT_ORDER);
+        int[] nFound = new int[nQueries];
+        ArrayList<QueryEntry> setNC = new ArrayList<>();
+        ArrayList<ISBSearchResult> setNNC = new ArrayList<>();
+        for (ISBSearchResult sr : results) {
+            QueryEntry q = (QueryEntry) sr.entry;
+            if (isNewEntry || entriesReinsert.contains(q)) {
+                addNeighbor(q, entry, sr.distance);
+            }
+            collectNeighbor(entry, q, sr.distance, nFound);
+            if (sr.distance <= mcRadius) {
+                setNC.add(q);
+            } else {
+                setNNC.add(sr);
+            }
+        }
+
+        if (formsMicroCluster(entry, setNC)) {
+            QueryCluster mcNew = new QueryCluster(entry, nQueries);
+            mcIndex.add(mcNew);
+            nMicroClusters++;
+            joinMicroCluster(entry, mcNew);
+            for (QueryEntry q : setNC) {
+                // move q from set PD to the micro-cluster
+                index.remove(q);
+                MCODBase.removePDRefs(q);
+                mcNew.addEntry(q);
+                joinMicroCluster(q, mcNew);
+            }
+            for (ISBSearchResult sr : setNNC) {
+                MCODBase.addToRmc(sr.entry, mcNew, sr.distance);
+            }
+            return;
+        }
+
+        // entry joins set PD; count its neighbors among the members of the micro-clusters around
+        for (SpatialIndex.Result<MicroCluster> r : nearMCs) {
+            if (r.distance - mcRadius > maxRadius + triangleSlack) {
+                continue;
+            }
+            for (ISBEntry member : r.data.entries) {
+                double distance = DistanceKernel.distance(entry.getValues(), member.getValues(), maxRadius);
+                collectNeighbor(entry, (QueryEntry) member, distance, nFound);
+            }
+        }
+        for (int q = 0; q < nQueries; q++) {
+            if (entry.id < queryWindowStart[q]) {
+                continue;
+            }
+            // keep the k most recent preceding neighbors, the last ones to expire
+            Arrays.sort(foundIds[q], 0, nFound[q]);
+            int nBefore = Arrays.binarySearch(foundIds[q], 0, nFound[q], entry.id);
+            nBefore = nBefore < 0 ? -(nBefore + 1) : nBefore;
+            entry.countAfter[q] = nFound[q] - nBefore;
+            entry.precIds[q] = Arrays.copyOfRange(foundIds[q], Math.max(0, nBefore - ks[q]), nBefore);
+            if (countNeighbors(entry, q) >= ks[q]) {
+                setInlier(entry, q);
+            } else {
+                entry.inlier[q] = false;
+                entry.nOutlier[q]++;
+            }
+        }
+        index.insert(entry);
+        for (SpatialIndex.Result<MicroCluster> r : nearMCs) {
+            MCODBase.addToRmc(entry, r.data, r.distance);
+        }
+    }
+
+    // Adds neighbor, at distance from entry, to the neighbors of entry collected in foundIds
+    // for the queries whose R covers distance and whose window holds both
+    private void collectNeighbor(QueryEntry entry, QueryEntry neighbor, double distance, int[] nFound) {
+        for (int q = 0; q < nQueries; q++) {
+            if (distance > radii[q] || entry.id < queryWindowStart[q] || neighbor.id < queryWindowStart[q]) {
+                continue;
+            }
+            if (nFound[q] == foundIds[q].length) {
+                foundIds[q] = Arrays.copyOf(foundIds[q], 2 * nFound[q]);
+            }
+            foundIds[q][nFound[q]++] = neighbor.id;
+        }
+    }
+
+    // Counts neighbor, at distance from PD entry entry, for the queries whose R covers
+    // distance and whose window holds both, and updates the state of entry
+    private void addNeighbor(QueryEntry entry, QueryEntry neighbor, double distance) {
+        for (int q = 0; q < nQueries; q++) {
+            if (distance > radii[q] || entry.id < queryWindowStart[q] || neighbor.id < queryWindowStart[q]) {
+                continue;
+            }
+            if (neighbor.id > entry.id) {
+                entry.countAfter[q]++;
+            } else {
+                addPrecId(entry, q, neighbor.id);
+            }
+            if (!entry.inlier[q] && countNeighbors(entry, q) >= ks[q]) {
+                setInlier(entry, q);
+            }
+        }
+    }
+
+    // Adds id to the k most recent preceding neighbors of entry for query q
+    private void addPrecId(QueryEntry entry, int q, long id) {
+        long[] precIds = entry.precIds[q];
+        int pos = Arrays.binarySearch(precIds, id);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -(pos + 1);
+        if (precIds.length < ks[q]) {
+            long[] ids = new long[precIds.length + 1];
+            System.arraycopy(precIds, 0, ids, 0, pos);
+            ids[pos] = id;
+            System.arraycopy(precIds, pos, ids, pos + 1, precIds.length - pos);
+            entry.precIds[q] = ids;
+        } else if (pos > 0) {
+            // drop the oldest
+            System.arraycopy(precIds, 1, precIds, 0, pos - 1);
+            precIds[pos - 1] = id;
+        }
+    }
+
+    // Whether entry and setNC, the PD entries within mcRadius of it, hold more than k objects
+    // in the window of every query
+    private boolean formsMicroCluster(QueryEntry entry, ArrayList<QueryEntry> setNC) {
+        for (int q = 0; q < nQueries; q++) {
+            int count = entry.id >= queryWindowStart[q] ? 1 : 0;
+            for (QueryEntry member : setNC) {
+                if (member.id >= queryWindowStart[q]) {
+                    count++;
+                }
+            }
+            if (count <= ks[q]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Makes entry, already added to the entries of mc, a member of mc and an inlier of the
+    // queries whose window holds it
+    private void joinMicroCluster(QueryEntry entry, QueryCluster mc) {
+        entry.mc = mc;
+        for (int q = 0; q < nQueries; q++) {
+            if (entry.id >= queryWindowStart[q]) {
+                mc.nInWindow[q]++;
+                entry.inlier[q] = true;
+                entry.nInlier[q]++;
+            }
+        }
+    }
+
+    private void setInlier(QueryEntry entry, int q) {
+        entry.inlier[q] = true;
+        entry.nInlier[q]++;
+        if (entry.countAfter[q] < ks[q] && !entry.unsafe[q]) {
+            entry.unsafe[q] = true;
+            unsafeInliers.get(q).add(entry);
+        }
+    }
+
+    // Neighbors of entry for query q still in the window
+    private int countNeighbors(QueryEntry entry, int q) {
+        long[] precIds = entry.precIds[q];
+        int firstInWindow = Arrays.binarySearch(precIds, queryWindowStart[q]);
+        if (firstInWindow < 0) {
+            firstInWindow = -(firstInWindow + 1);
+        }
+        return entry.countAfter[q] + precIds.length - firstInWindow;
+    }
+
+    // Expires the entries that left the windows of the queries that slid, dissolves the
+    // micro-clusters left with too few members in one of them, and removes the entries no
+    // window holds any more
+    private void processExpiredEntries(boolean[] slid) {
+        ArrayList<QueryCluster> shrunk = new ArrayList<>();
+        for (int q = 0; q < nQueries; q++) {
+            if (!slid[q]) {
+                continue;
+            }
+            // the entries that left the window of the query are the ids of its last slide
+            for (long id = queryWindowStart[q] - slideSizes[q]; id < queryWindowStart[q]; id++) {
+                QueryEntry entry = (QueryEntry) windowElements.get(id);
+                if (entry == null) {
+                    continue;
+                }
+                updateStatistics(entry, q);
+                evaluateAsOutlier(entry, q);
+                if (entry.mc != null) {
+                    QueryCluster mc = (QueryCluster) entry.mc;
+                    if (--mc.nInWindow[q] == ks[q]) {
+                        shrunk.add(mc);
+                    }
+                }
+            }
+        }
+
+        long start = Long.MAX_VALUE;
+        for (int q = 0; q < nQueries; q++) {
+            start = Math.min(start, queryWindowStart[q]);
+        }
+        windowStart = start;
+        windowEnd = objId - 1;
+        for (ISBEntry expiredEntry : getExpiredEntries()) {
+            windowElements.remove(expiredEntry);
+            if (expiredEntry.mc != null) {
+                expiredEntry.mc.removeEntry(expiredEntry);
+            } else {
+                index.remove(expiredEntry);
+                MCODBase.removePDRefs(expiredEntry);
+            }
+        }
+
+        for (QueryCluster mc : shrunk) {
+            // a micro-cluster may have shrunk in several windows
+            if (mcIndex.remove(mc)) {
+                nMicroClusters--;
+                dissolveMicroCluster(mc);
+            }
+        }
+
+        for (int q = 0; q < nQueries; q++) {
+            if (slid[q]) {
+                checkUnsafeInliers(q);
+            }
+        }
+    }
+
+    // Processes the members of mc, which is no longer indexed, again as new entries
+    private void dissolveMicroCluster(QueryCluster mc) {
+        entriesReinsert = new HashSet<>(mc.entries);
+        for (ISBEntry member : mc.entries) {
+            QueryEntry entry = (QueryEntry) member;
+            entry.initEntry();
+            for (int q = 0; q < nQueries; q++) {
+                entry.countAfter[q] = 0;
+                entry.precIds[q] = NO_IDS;
+            }
+            processNewEntry(entry, false);
+        }
+        entriesReinsert = new HashSet<>();
+    }
+
+    // Turns the unsafe inliers of query q that lost preceding neighbors below k into outliers;
+    // the ones with k succeeding neighbors are inliers until they expire
+    private void checkUnsafeInliers(int q) {
+        ArrayList<QueryEntry> entries = unsafeInliers.get(q);
+        int kept = 0;
+        for (QueryEntry entry : entries) {
+            if (entry.mc != null || !entry.inlier[q] || entry.id < queryWindowStart[q]
+                    || entry.countAfter[q] >= ks[q]) {
+                entry.unsafe[q] = false;
+                continue;
+            }
+            if (countNeighbors(entry, q) < ks[q]) {
+                entry.inlier[q] = false;
+                entry.nOutlier[q]++;
+                entry.unsafe[q] = false;
+                continue;
+            }
+            entries.set(kept++, entry);
+        }
+        entries.subList(kept, entries.size()).clear();
+    }
+
+    private void evaluateAsOutlier(QueryEntry entry, int q) {
+        if (entry.nOutlier[q] > 0 && entry.nInlier[q] == 0) {
+            // node is a pure outlier for query q, so we record it
+            outliersFound.get(q).add(new Outlier<>(entry));
+        }
+    }
+
+    private void updateStatistics(QueryEntry entry, int q) {
+        if ((entry.nInlier[q] > 0) && (entry.nOutlier[q] > 0))
+            m_nBothInlierOutlier[q]++;
+        else if (entry.nInlier[q] > 0)
+            m_nOnlyInlier[q]++;
+        else
+            m_nOnlyOutlier[q]++;
+    }
+
+    @Override
+    public void evaluateRemainingElemsInWin() {
+        for (int q = 0; q < nQueries; q++) {
+            for (long id = queryWindowStart[q]; id < objId; id++) {
+                QueryEntry entry = (QueryEntry) windowElements.get(id);
+                if (entry != null) {
+                    evaluateAsOutlier(entry, q);
+                }
+            }
+        }
+    }
+
+    // Outliers of the first query
+    @Override
+    public Set<Outlier<ISBEntry>> getOutliersFound() {
+        return getOutliersFound(0);
+    }
+
+    public Set<Outlier<ISBEntry>> getOutliersFound(int query) {
+        return outliersFound.get(query);
+    }
+
+    // Statistics of the first query
+    @Override
+    public HashMap<String, Integer> getResults() {
+        return getResults(0);
+    }
+
+    // Statistics of query q; the range queries are shared by all the queries
+    public HashMap<String, Integer> getResults(int q) {
+        // get counters of expired entries
+        int nBothInlierOutlier = m_nBothInlierOutlier[q];
+        int nOnlyInlier = m_nOnlyInlier[q];
+        int nOnlyOutlier = m_nOnlyOutlier[q];
+
+        // add counters of non expired entries still in the window of the query
+        for (long id = queryWindowStart[q]; id < objId; id++) {
+            QueryEntry entry = (QueryEntry) windowElements.get(id);
+            if (entry == null) {
+                continue;
+            }
+            if ((entry.nInlier[q] > 0) && (entry.nOutlier[q] > 0))
+                nBothInlierOutlier++;
+            else if (entry.nInlier[q] > 0)
+                nOnlyInlier++;
+            else
+                nOnlyOutlier++;
+        }
+
+        HashMap<String, Integer> results = new HashMap<>();
+        results.put("nBothInlierOutlier", nBothInlierOutlier);
+        results.put("nOnlyInlier", nOnlyInlier);
+        results.put("nOnlyOutlier", nOnlyOutlier);
+        results.put("nRangeQueriesExecuted", nRangeQueriesExecuted);
+        return results;
+    }
+}
@@ -0,0 +1,274 @@
+package algorithms;
+
+import core.Outlier;
+import core.StreamDetector;
+import core.StreamObj;
+import core.WorkerCost;
+import core.mcodbase.ISBIndex.ISBEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * MCOD split over regions of the data space, each region handled by its own MCOD instance
+ * (shard) on its own thread.
+ *
+ * The space is cut into slabs along the dimension with the largest spread in the first slide,
+ * at quantiles of that slide, so that the shards get similar loads. Every object is owned by
+ * the shard of its slab, and is also sent, as a halo copy, to the shards whose slab lies
+ * within R of it. A shard therefore sees all the neighbors of the objects it owns and finds
+ * their outlier status exactly; it only reports the objects it owns.
+ *
+ * The shards keep the ids of the objects in the whole stream and slide their windows with the
+ * stream, so an object expires from every shard at the same time as in a single MCOD.
+ *
+ * The windows, outliers and statistics are those of the shards, so ShardedMCOD is not an
+ * OutlierDetector itself and keeps no window of its own.
+ */
+public class ShardedMCOD implements StreamDetector {
+    // ids of the stream objects, numbered as a single MCOD numbers them
+    private static final Long FIRST_OBJ_ID = 1L;
+
+    private final int nShards;
+    private final Shard[] shards;
+    // runs the shards of a slide in parallel
+    private final ForkJoinPool pool;
+    // cost of the shards run on pool
+    private final WorkerCost shardCost = new WorkerCost();
+    private Long objId;
+
+    // slab s holds the objects with cuts[s - 1] <= x < cuts[s] along splitDim;
+    // chosen from the first slide
+    private int splitDim;
+    private double[] cuts;
+    // objects are sent to the shards of the slabs within haloWidth of them; slightly wider
+    // than R so that rounding in the distances cannot miss a neighbor
+    private final double haloWidth;
+    // print per-slide diagnostics
+    private boolean verbose = true;
+
+    // An MCOD that only reports the objects of its own slab
+    private class Shard extends MCOD {
+        private final int index;
+
+        Shard(int index, int windowSize, int slideSize, double radius, int k) {
+            // the parameters are printed once, by ShardedMCOD, and the per-slide diagnostics
+            // of the shards would interleave
+            super(windowSize, slideSize, radius, k, false);
+            this.index = index;
+        }
+
+        @Override
+        protected boolean isReported(ISBEntry entry) {
+            return shardOf(entry.getValues()[splitDim]) == index;
+        }
+    }
+
+    public ShardedMCOD(int windowSize, int slideSize, double radius, int k, int nShards) {
+        this.nShards = Math.max(nShards, 1);
+        this.haloWidth = radius * (1 + 1e-9);
+        this.objId = FIRST_OBJ_ID;
+
+        shards = new Shard[this.nShards];
+        for (int s = 0; s < this.nShards; s++) {
+            shards[s] = new Shard(s, windowSize, slideSize, radius, k);
+        }
+        pool = this.nShards > 1 ? new ForkJoinPool(this.nShards) : null;
+
+        System.out.println("Init ShardedMCOD:");
+        System.out.println("   window_size: " + windowSize);
+        System.out.println("   slide_size: " + slideSize);
+        System.out.println("   radius: " + radius);
+        System.out.println("   k: " + k);
+        System.out.println("   shards: " + this.nShards);
+    }
+
+    @Override
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    @Override
+    public WorkerCost getWorkerCost() {
+        return pool != null ? shardCost : null;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+
+    public void setBatchMode(boolean batchMode) {
+        for (Shard shard : shards) {
+            shard.setBatchMode(batchMode);
+        }
+    }
+
+    public void setPDIndex(String indexType) {
+        for (Shard shard : shards) {
+            shard.setPDIndex(indexType);
+        }
+    }
+
+    public void setMCIndex(String indexType) {
+        for (Shard shard : shards) {
+            shard.setMCIndex(indexType);
+        }
+    }
+
+    // StreamDetector entry point
+    @Override
+    public void processNewStreamObjects(ArrayList<StreamObj> streamObjs) {
+        ProcessNewStreamObjects(streamObjs);
+    }
+
+    public void ProcessNewStreamObjects(ArrayList<StreamObj> streamObjs) {
+        if (cuts == null) {
+            chooseCuts(streamObjs);
+        }
+
+        // route the objects of the slide to their shards
+        ArrayList<ArrayList<ISBEntry>> routed = new ArrayList<>(nShards);
+        for (int s = 0; s < nShards; s++) {
+            routed.add(new ArrayList<>());
+        }
+        long firstId = objId;
+        for (StreamObj streamObj : streamObjs) {
+            double x = streamObj.getValues()[splitDim];
+            int first = shardOf(x - haloWidth);
+            int last = shardOf(x + haloWidth);
+            for (int s = first; s <= last; s++) {
+                // each shard gets its own entry, the entries hold per-detector state
+                routed.get(s).add(new ISBEntry(streamObj, objId));
+            }
+            objId++; // update object identifier
+        }
+
+        if (pool == null) {
+            shards[0].processSlide(firstId, routed.get(0));
+        } else {
+            ArrayList<Callable<Void>> tasks = new ArrayList<>(nShards);
+            for (int s = 0; s < nShards; s++) {
+                final Shard shard = shards[s];
+                final ArrayList<ISBEntry> entries = routed.get(s);
+                tasks.add(shardCost.wrap(() -> {
+                    shard.processSlide(firstId, entries);
+                    return null;
+                }));
+            }
+            invokeAll(tasks);
+        }
+
+        if (verbose) {
+            System.out.println("-------------------- Sharded MCOD --------------------");
+            System.out.println("DIAG - Current stream object: " + (objId - 1));
+            for (int s = 0; s < nShards; s++) {
+                System.out.println("DIAG - Shard " + s + " window size: " + shards[s].windowElements.size());
+            }
+            System.out.println("------------------------------------------------------");
+        }
+    }
+
+    private void invokeAll(ArrayList<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while processing a slide", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Shard failed to process a slide", e.getCause());
+        }
+    }
+
+    private void chooseCuts(ArrayList<StreamObj> streamObjs) {
+        cuts = new double[nShards - 1];
+        if (streamObjs.isEmpty()) {
+            Arrays.fill(cuts, Double.POSITIVE_INFINITY);
+            return;
+        }
+
+        int dims = streamObjs.get(0).getValues().length;
+        double maxSpread = -1;
+        for (int d = 0; d < dims; d++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (StreamObj streamObj : streamObjs) {
+                min = Math.min(min, streamObj.getValues()[d]);
+                max = Math.max(max, streamObj.getValues()[d]);
+            }
+            if (max - min > maxSpread) {
+                maxSpread = max - min;
+                splitDim = d;
+            }
+        }
+
+        double[] values = new double[streamObjs.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = streamObjs.get(i).getValues()[splitDim];
+        }
+        Arrays.sort(values);
+        for (int s = 0; s < cuts.length; s++) {
+            cuts[s] = values[(int) ((long) (s + 1) * values.length / nShards)];
+        }
+    }
+
+    // Shard of the slab holding coordinate x of splitDim
+    private int shardOf(double x) {
+        int lo = 0;
+        int hi = cuts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cuts[mid] <= x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public void evaluateRemainingElemsInWin() {
+        for (Shard shard : shards) {
+            shard.evaluateRemainingElemsInWin();
+        }
+    }
+
+    // Outliers reported by the shards; every object is reported by the shard owning it only
+    @Override
+    public Set<Outlier<ISBEntry>> getOutliersFound() {
+        TreeSet<Outlier<ISBEntry>> outliers = new TreeSet<>();
+        for (Shard shard : shards) {
+            outliers.addAll(shard.getOutliersFound());
+        }
+        return outliers;
+    }
+
+    // Statistics of the objects owned by each shard; range queries count the work of all
+    // the shards, halo copies included
+    @Override
+    public HashMap<String, Integer> getResults() {
+        HashMap<String, Integer> results = new HashMap<>();
+        for (Shard shard : shards) {
+            for (Map.Entry<String, Integer> result : shard.getResults().entrySet()) {
+                results.merge(result.getKey(), result.getValue(), Integer::sum);
+            }
+        }
+        return results;
+    }
+}
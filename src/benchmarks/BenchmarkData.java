@@ -0,0 +1,132 @@
+package benchmarks;
+
+import core.Stream;
+import core.StreamObj;
+import core.mtree.DistanceFunctions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+// Data sets and small statistics helpers shared by the benchmark drivers.
+public final class BenchmarkData {
+    public static final String SYNTHETIC = "synthetic";
+    public static final String[] DATASETS = { "shuttle", "satimage-2", "arrhythmia" };
+
+    private BenchmarkData() {}
+
+    public static ArrayList<StreamObj> loadDataset(String datasetsDir, String name, boolean containsClass) {
+        Stream stream = new Stream();
+        stream.loadFile(datasetsDir + File.separator + name + ".csv", containsClass);
+        return stream.getIncomingData(Integer.MAX_VALUE);
+    }
+
+    // Gaussian clusters with a small fraction of uniformly scattered noise points.
+    public static ArrayList<StreamObj> generateSynthetic(int nPoints, int dimensions, long seed) {
+        Random random = new Random(seed);
+        int nClusters = 10;
+        double spread = 100.0;
+        double sigma = 5.0;
+
+        double[][] centers = new double[nClusters][dimensions];
+        for (int c = 0; c < nClusters; c++) {
+            for (int d = 0; d < dimensions; d++) {
+                centers[c][d] = random.nextDouble() * spread;
+            }
+        }
+
+        ArrayList<StreamObj> points = new ArrayList<>(nPoints);
+        for (int i = 0; i < nPoints; i++) {
+            double[] values = new double[dimensions];
+            if (random.nextDouble() < 0.01) {
+                for (int d = 0; d < dimensions; d++) {
+                    values[d] = random.nextDouble() * spread;
+                }
+            } else {
+                double[] center = centers[random.nextInt(nClusters)];
+                for (int d = 0; d < dimensions; d++) {
+                    values[d] = center[d] + random.nextGaussian() * sigma;
+                }
+            }
+            points.add(new StreamObj(values));
+        }
+        return points;
+    }
+
+    // The M-tree indexes must not hold the same coordinates twice, so duplicates are dropped
+    // while keeping the original arrival order.
+    public static ArrayList<StreamObj> distinct(List<StreamObj> points) {
+        TreeSet<StreamObj> seen = new TreeSet<>();
+        ArrayList<StreamObj> results = new ArrayList<>();
+        for (StreamObj obj : points) {
+            if (seen.add(obj)) {
+                results.add(obj);
+            }
+        }
+        return results;
+    }
+
+    // Median of the distances between randomly sampled pairs of points. Used to express query
+    // radii relative to the scale of each data set.
+    public static double estimateTypicalDistance(List<StreamObj> points, Random random) {
+        int nSamples = (int) Math.min(2000, (long) points.size() * (points.size() - 1) / 2);
+        double[] distances = new double[Math.max(nSamples, 1)];
+        for (int i = 0; i < nSamples; i++) {
+            StreamObj a = points.get(random.nextInt(points.size()));
+            StreamObj b = points.get(random.nextInt(points.size()));
+            distances[i] = DistanceFunctions.euclidean(a, b);
+        }
+        Arrays.sort(distances);
+        return distances[distances.length / 2];
+    }
+
+    public static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) {
+            sum += v;
+        }
+        return values.length > 0 ? sum / values.length : 0;
+    }
+
+    public static double stdDev(double[] values) {
+        if (values.length < 2) {
+            return 0;
+        }
+        double mean = mean(values);
+        double sum = 0;
+        for (double v : values) {
+            sum += (v - mean) * (v - mean);
+        }
+        return Math.sqrt(sum / (values.length - 1));
+    }
+
+    // Nearest-rank percentile of an already sorted array.
+    public static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.min(Math.max(rank - 1, 0), sorted.length - 1)];
+    }
+
+    public static int[] parseInts(String csv) {
+        String[] parts = csv.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    public static double[] parseDoubles(String csv) {
+        String[] parts = csv.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,309 @@
+package benchmarks;
+
+import algorithms.ApproxMCLSHOD;
+import algorithms.ApproxMCOD;
+import algorithms.LSHOD;
+import algorithms.MCOD;
+import algorithms.ShardedMCOD;
+import core.DistanceKernel;
+import core.Stream;
+import core.StreamDetector;
+import core.StreamObj;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * End-to-end benchmark of the detectors.
+ *
+ * Every data set is split once into the slides that Executor.addNewStreamObjects feeds to the
+ * detectors (Stream.getIncomingData(slideSize)). Each detector then processes all slides
+ * several times: the warm-up runs let the JIT reach steady state, the measured runs report
+ * throughput, the per-slide latency distribution and the allocation rate of the thread that
+ * drives the detector. Each run uses a freshly constructed detector.
+ *
+ * The data set options accept comma separated lists; --R, --k, --W and --slide are matched
+ * with --datafiles by position, a single value applies to all data sets. Example:
+ *
+ *   java benchmarks.DetectorBenchmark --datafiles datasets/shuttle.csv,datasets/satimage-2.csv
+ *        --R 20,40 --k 30,20 --W 5000,2000 --slide 500,200 --algorithms MCOD,ApproxMCOD
+ *
+ * ShardedMCOD only runs when listed in --algorithms (with --shards). Its shards run on pool
+ * threads, so its allocation rate only covers the thread routing the slides.
+ */
+public class DetectorBenchmark {
+    private static final String[] ALGORITHMS = { "MCOD", "ApproxMCOD", "LSHOD", "ApproxMCLSHOD" };
+
+    private String[] algorithms = ALGORITHMS;
+    private String[] dataFiles = { "datasets/shuttle.csv" };
+    private String[] windowSizes = { "5000" };
+    private String[] slideSizes = { "500" };
+    private String[] rParameters = { "20" };
+    private String[] kParameters = { "30" };
+    private boolean containsClass = false;
+    private int pdLimit = 1000;
+    private double arFactor = 0.1;
+    private boolean bulkEviction = false;
+    private boolean batchMode = false;
+    private int threads = 1;
+    private int shards = 2;
+    private String pdIndex = "mtree";
+    private String mcIndex = "mtree";
+    private int warmupIterations = 2;
+    private int measurementIterations = 3;
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private static class RunStats {
+        long totalNanos;
+        long allocatedBytes;
+        long[] slideNanos;
+        int nOutliers;
+    }
+
+    private void readArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+
+            //check if arg starts with --
+            String arg = args[i];
+            if (arg.indexOf("--") == 0) {
+                switch (arg) {
+                    case "--algorithms":
+                        this.algorithms = args[i + 1].split(",");
+                        break;
+                    case "--datafiles":
+                        this.dataFiles = args[i + 1].split(",");
+                        break;
+                    case "--W":
+                        this.windowSizes = args[i + 1].split(",");
+                        break;
+                    case "--slide":
+                        this.slideSizes = args[i + 1].split(",");
+                        break;
+                    case "--R":
+                        this.rParameters = args[i + 1].split(",");
+                        break;
+                    case "--k":
+                        this.kParameters = args[i + 1].split(",");
+                        break;
+                    case "--containsClass":
+                        this.containsClass = Boolean.parseBoolean(args[i + 1]);
+                        break;
+                    case "--pdLimit":
+                        this.pdLimit = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--arFactor":
+                        this.arFactor = Double.parseDouble(args[i + 1]);
+                        break;
+                    case "--bulkEviction":
+                        this.bulkEviction = Boolean.parseBoolean(args[i + 1]);
+                        break;
+                    case "--batch":
+                        this.batchMode = Boolean.parseBoolean(args[i + 1]);
+                        break;
+                    case "--threads":
+                        this.threads = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--shards":
+                        this.shards = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--pdIndex":
+                        this.pdIndex = args[i + 1];
+                        break;
+                    case "--mcIndex":
+                        this.mcIndex = args[i + 1];
+                        break;
+                    case "--warmup":
+                        this.warmupIterations = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--iterations":
+                        this.measurementIterations = Integer.parseInt(args[i + 1]);
+                        break;
+                }
+            }
+        }
+    }
+
+    private static String valueFor(String[] values, int index) {
+        return values.length == 1 ? values[0] : values[index];
+    }
+
+    public void run() {
+        if (!isAllocationCountingSupported()) {
+            System.out.println("Thread allocation counting is not supported by this JVM, alloc columns will be 0");
+        }
+
+        System.out.println("Distance kernel: " + DistanceKernel.kernelName());
+
+        ArrayList<String> report = new ArrayList<>();
+        report.add(String.format("%-14s %-16s %9s %12s %10s %10s %10s %12s %10s %9s",
+                "algorithm", "dataset", "objects", "objects/s", "p50 ms", "p99 ms", "max ms",
+                "alloc MB/s", "B/object", "outliers"));
+
+        for (int d = 0; d < dataFiles.length; d++) {
+            String dataFile = dataFiles[d];
+            int windowSize = Integer.parseInt(valueFor(windowSizes, d));
+            int slideSize = Integer.parseInt(valueFor(slideSizes, d));
+            double rParameter = Double.parseDouble(valueFor(rParameters, d));
+            int kParameter = Integer.parseInt(valueFor(kParameters, d));
+
+            ArrayList<ArrayList<StreamObj>> slides = loadSlides(dataFile, slideSize);
+            int nObjects = 0;
+            for (ArrayList<StreamObj> slide : slides) {
+                nObjects += slide.size();
+            }
+            int dimensions = slides.isEmpty() ? 0 : slides.get(0).get(0).dimensions();
+            String datasetName = new File(dataFile).getName();
+
+            for (String algorithm : algorithms) {
+                ArrayList<RunStats> measured = new ArrayList<>();
+                for (int it = 0; it < warmupIterations + measurementIterations; it++) {
+                    StreamDetector detector = createDetector(algorithm, windowSize, slideSize, rParameter,
+                            kParameter, dimensions);
+                    RunStats stats = runOnce(detector, slides);
+                    if (it >= warmupIterations) {
+                        measured.add(stats);
+                    }
+                    System.out.println(String.format("  %s on %s: %s iteration %d, %.1f ms", algorithm, datasetName,
+                            it < warmupIterations ? "warm-up" : "measured", it + 1, stats.totalNanos / 1e6));
+                }
+                report.add(summarize(algorithm, datasetName, nObjects, measured));
+            }
+        }
+
+        System.out.println();
+        for (String line : report) {
+            System.out.println(line);
+        }
+    }
+
+    private ArrayList<ArrayList<StreamObj>> loadSlides(String dataFile, int slideSize) {
+        Stream stream = new Stream();
+        stream.loadFile(dataFile, containsClass);
+
+        ArrayList<ArrayList<StreamObj>> slides = new ArrayList<>();
+        while (stream.hasNext()) {
+            slides.add(stream.getIncomingData(slideSize));
+        }
+        return slides;
+    }
+
+    private StreamDetector createDetector(String algorithm, int windowSize, int slideSize, double rParameter,
+                                          int kParameter, int dimensions) {
+        switch (algorithm) {
+            case "MCOD": {
+                MCOD mcod = new MCOD(windowSize, slideSize, rParameter, kParameter);
+                mcod.setVerbose(false);
+                mcod.setBatchMode(batchMode);
+                mcod.setThreads(threads);
+                mcod.setPDIndex(pdIndex);
+                mcod.setMCIndex(mcIndex);
+                return mcod;
+            }
+            case "ApproxMCOD": {
+                ApproxMCOD approxMCOD = new ApproxMCOD(windowSize, slideSize, rParameter, kParameter,
+                        pdLimit, arFactor);
+                approxMCOD.setVerbose(false);
+                approxMCOD.setBulkEviction(bulkEviction);
+                approxMCOD.setPDIndex(pdIndex);
+                approxMCOD.setMCIndex(mcIndex);
+                return approxMCOD;
+            }
+            case "LSHOD": {
+                // same LSH parameters as Executor
+                LSHOD lshod = new LSHOD(windowSize, slideSize, rParameter, kParameter,
+                        dimensions, 4, 10, (int) rParameter);
+                lshod.setVerbose(false);
+                return lshod;
+            }
+            case "ApproxMCLSHOD": {
+                ApproxMCLSHOD approxMCLSHOD = new ApproxMCLSHOD(windowSize, slideSize, rParameter, kParameter,
+                        dimensions, 5, 10, (int) (3 * rParameter / 2));
+                approxMCLSHOD.setVerbose(false);
+                return approxMCLSHOD;
+            }
+            case "ShardedMCOD": {
+                ShardedMCOD shardedMCOD = new ShardedMCOD(windowSize, slideSize, rParameter, kParameter, shards);
+                shardedMCOD.setVerbose(false);
+                shardedMCOD.setBatchMode(batchMode);
+                shardedMCOD.setPDIndex(pdIndex);
+                shardedMCOD.setMCIndex(mcIndex);
+                return shardedMCOD;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        }
+    }
+
+    private RunStats runOnce(StreamDetector detector, ArrayList<ArrayList<StreamObj>> slides) {
+        RunStats stats = new RunStats();
+        stats.slideNanos = new long[slides.size()];
+
+        long allocStart = getAllocatedBytes();
+        long runStart = System.nanoTime();
+        for (int s = 0; s < slides.size(); s++) {
+            long slideStart = System.nanoTime();
+            detector.processNewStreamObjects(slides.get(s));
+            stats.slideNanos[s] = System.nanoTime() - slideStart;
+        }
+        detector.evaluateRemainingElemsInWin();
+        stats.totalNanos = System.nanoTime() - runStart;
+        stats.allocatedBytes = getAllocatedBytes() - allocStart;
+        stats.nOutliers = detector.getOutliersFound().size();
+        return stats;
+    }
+
+    private String summarize(String algorithm, String datasetName, int nObjects, ArrayList<RunStats> measured) {
+        long totalNanos = 0;
+        long allocatedBytes = 0;
+        int nSlides = 0;
+        for (RunStats stats : measured) {
+            totalNanos += stats.totalNanos;
+            allocatedBytes += stats.allocatedBytes;
+            nSlides += stats.slideNanos.length;
+        }
+
+        // latency percentiles over the slides of all measured runs
+        long[] allSlides = new long[nSlides];
+        int pos = 0;
+        for (RunStats stats : measured) {
+            System.arraycopy(stats.slideNanos, 0, allSlides, pos, stats.slideNanos.length);
+            pos += stats.slideNanos.length;
+        }
+        Arrays.sort(allSlides);
+
+        double seconds = totalNanos / 1e9;
+        double objectsPerSec = seconds > 0 ? (double) nObjects * measured.size() / seconds : 0;
+        double allocMBPerSec = seconds > 0 ? allocatedBytes / (1024.0 * 1024.0) / seconds : 0;
+        double bytesPerObject = nObjects > 0 ? (double) allocatedBytes / ((long) nObjects * measured.size()) : 0;
+        int nOutliers = measured.isEmpty() ? 0 : measured.get(measured.size() - 1).nOutliers;
+
+        return String.format("%-14s %-16s %9d %12.0f %10.3f %10.3f %10.3f %12.1f %10.0f %9d",
+                algorithm, datasetName, nObjects, objectsPerSec,
+                BenchmarkData.percentile(allSlides, 50) / 1e6,
+                BenchmarkData.percentile(allSlides, 99) / 1e6,
+                (nSlides > 0 ? allSlides[nSlides - 1] : 0) / 1e6,
+                allocMBPerSec, bytesPerObject, nOutliers);
+    }
+
+    private boolean isAllocationCountingSupported() {
+        return threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported();
+    }
+
+    private long getAllocatedBytes() {
+        if (!isAllocationCountingSupported()) {
+            return 0L;
+        }
+        return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String[] args) {
+        DetectorBenchmark benchmark = new DetectorBenchmark();
+        benchmark.readArguments(args);
+        benchmark.run();
+    }
+}
@@ -0,0 +1,248 @@
+package benchmarks;
+
+import core.StreamObj;
+import core.index.SpatialIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/*
+ * Micro-benchmark of the spatial index operations used by the MCOD family of detectors.
+ *
+ * Every SpatialIndex implementation (mtree, grid, kd, vp; see SpatialIndex.create) is
+ * exercised as the detectors use it for set PD and for the micro-clusters. For every data set,
+ * index size and radius the driver runs a number of warm-up iterations followed by measured
+ * iterations of rangeSearch, add and remove, and reports the mean time per operation and its
+ * standard deviation across iterations.
+ *
+ * Radii are given as factors of the median pairwise distance of each data set, so that the
+ * same factors are meaningful for all data sets. Example:
+ *
+ *   java benchmarks.SpatialIndexBenchmark --datasets shuttle,synthetic --sizes 1000,5000
+ *        --dims 9,36,274 --radiusFactors 0.1,0.25 --warmup 3 --iterations 5 --indexes mtree,vp
+ */
+public class SpatialIndexBenchmark {
+    private String datasetsDir = "datasets";
+    private String[] indexes = { "mtree", "grid", "kd", "vp" };
+    private String[] datasets = { "shuttle", "satimage-2", "arrhythmia", BenchmarkData.SYNTHETIC };
+    private int[] treeSizes = { 1000, 5000 };
+    // dimensions of the synthetic data sets; the real data sets have fixed dimensions
+    private int[] syntheticDims = { 9, 36, 274 };
+    private double[] radiusFactors = { 0.1, 0.25, 0.5 };
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private int opsPerIteration = 500;
+    private long seed = 42L;
+
+    // consumes query results so that the JIT cannot discard the measured work
+    private long sink = 0;
+
+    private static class Measurement {
+        double[] nsPerOp;
+        double resultsPerOp;
+
+        Measurement(int iterations) {
+            nsPerOp = new double[iterations];
+        }
+    }
+
+    private void readArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+
+            //check if arg starts with --
+            String arg = args[i];
+            if (arg.indexOf("--") == 0) {
+                switch (arg) {
+                    case "--datasetsDir":
+                        this.datasetsDir = args[i + 1];
+                        break;
+                    case "--datasets":
+                        this.datasets = args[i + 1].split(",");
+                        break;
+                    case "--indexes":
+                        this.indexes = args[i + 1].split(",");
+                        break;
+                    case "--sizes":
+                        this.treeSizes = BenchmarkData.parseInts(args[i + 1]);
+                        break;
+                    case "--dims":
+                        this.syntheticDims = BenchmarkData.parseInts(args[i + 1]);
+                        break;
+                    case "--radiusFactors":
+                        this.radiusFactors = BenchmarkData.parseDoubles(args[i + 1]);
+                        break;
+                    case "--warmup":
+                        this.warmupIterations = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--iterations":
+                        this.measurementIterations = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--ops":
+                        this.opsPerIteration = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--seed":
+                        this.seed = Long.parseLong(args[i + 1]);
+                        break;
+                }
+            }
+        }
+    }
+
+    public void run() {
+        System.out.println(String.format("%-20s %-12s %5s %7s %10s %-8s %14s %12s %10s",
+                "index", "dataset", "dims", "size", "radius", "op", "ns/op", "stddev", "results"));
+
+        for (String dataset : datasets) {
+            if (dataset.equals(BenchmarkData.SYNTHETIC)) {
+                int maxSize = 0;
+                for (int size : treeSizes) {
+                    maxSize = Math.max(maxSize, size);
+                }
+                for (int dims : syntheticDims) {
+                    ArrayList<StreamObj> points = BenchmarkData.generateSynthetic(maxSize + opsPerIteration, dims, seed);
+                    runDataset(dataset, points);
+                }
+            } else {
+                runDataset(dataset, BenchmarkData.loadDataset(datasetsDir, dataset, false));
+            }
+        }
+
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private void runDataset(String dataset, ArrayList<StreamObj> loaded) {
+        ArrayList<StreamObj> points = BenchmarkData.distinct(loaded);
+        if (points.isEmpty()) {
+            System.out.println("Skipping empty data set " + dataset);
+            return;
+        }
+
+        Random random = new Random(seed);
+        double typicalDistance = BenchmarkData.estimateTypicalDistance(points, random);
+        int dims = points.get(0).dimensions();
+
+        for (int size : treeSizes) {
+            if (size > points.size()) {
+                System.out.println("Skipping size " + size + " for " + dataset + " (" + points.size() + " distinct points)");
+                continue;
+            }
+            for (double factor : radiusFactors) {
+                double radius = factor * typicalDistance;
+
+                for (String index : indexes) {
+                    runIndex(index, dataset, dims, size, radius, points,
+                            () -> SpatialIndex.create(index, radius, (StreamObj obj) -> obj));
+                }
+            }
+        }
+    }
+
+    private <D> void runIndex(String indexName, String dataset, int dims, int size, double radius,
+                              List<D> points, Supplier<SpatialIndex<D>> treeFactory) {
+        Random random = new Random(seed);
+        ArrayList<D> data = new ArrayList<>(points);
+
+        Measurement add = measureAdd(data, size, treeFactory, random);
+        print(indexName, dataset, dims, size, radius, "add", add);
+
+        // Build the tree used by the query and remove benchmarks once
+        Collections.shuffle(data, random);
+        SpatialIndex<D> tree = treeFactory.get();
+        List<D> indexed = new ArrayList<>(data.subList(0, size));
+        for (D d : indexed) {
+            tree.add(d);
+        }
+
+        Measurement query = measureQuery(tree, data, radius, random);
+        print(indexName, dataset, dims, size, radius, "query", query);
+
+        Measurement remove = measureRemove(tree, indexed, random);
+        print(indexName, dataset, dims, size, radius, "remove", remove);
+    }
+
+    private <D> Measurement measureAdd(ArrayList<D> data, int size, Supplier<SpatialIndex<D>> treeFactory, Random random) {
+        Measurement m = new Measurement(measurementIterations);
+        for (int it = 0; it < warmupIterations + measurementIterations; it++) {
+            Collections.shuffle(data, random);
+            SpatialIndex<D> tree = treeFactory.get();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < size; i++) {
+                tree.add(data.get(i));
+            }
+            long elapsed = System.nanoTime() - start;
+
+            if (it >= warmupIterations) {
+                m.nsPerOp[it - warmupIterations] = (double) elapsed / size;
+            }
+        }
+        return m;
+    }
+
+    private <D> Measurement measureQuery(SpatialIndex<D> tree, ArrayList<D> data, double radius, Random random) {
+        Measurement m = new Measurement(measurementIterations);
+        long totalResults = 0;
+        for (int it = 0; it < warmupIterations + measurementIterations; it++) {
+            long results = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < opsPerIteration; i++) {
+                D queryData = data.get(random.nextInt(data.size()));
+                for (SpatialIndex.Result<D> item : tree.rangeSearch(queryData, radius)) {
+                    results++;
+                    sink += (long) item.distance;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            if (it >= warmupIterations) {
+                m.nsPerOp[it - warmupIterations] = (double) elapsed / opsPerIteration;
+                totalResults += results;
+            }
+        }
+        m.resultsPerOp = (double) totalResults / ((long) measurementIterations * opsPerIteration);
+        return m;
+    }
+
+    private <D> Measurement measureRemove(SpatialIndex<D> tree, List<D> indexed, Random random) {
+        Measurement m = new Measurement(measurementIterations);
+        int nOps = Math.min(opsPerIteration, indexed.size() / 2);
+        for (int it = 0; it < warmupIterations + measurementIterations; it++) {
+            Collections.shuffle(indexed, random);
+            List<D> victims = indexed.subList(0, nOps);
+
+            long start = System.nanoTime();
+            for (D d : victims) {
+                if (tree.remove(d)) {
+                    sink++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            // restore the tree for the next iteration (not measured)
+            for (D d : victims) {
+                tree.add(d);
+            }
+
+            if (it >= warmupIterations) {
+                m.nsPerOp[it - warmupIterations] = (double) elapsed / nOps;
+            }
+        }
+        return m;
+    }
+
+    private void print(String indexName, String dataset, int dims, int size, double radius, String op, Measurement m) {
+        String results = op.equals("query") ? String.format("%.1f", m.resultsPerOp) : "-";
+        System.out.println(String.format("%-20s %-12s %5d %7d %10.3f %-8s %14.1f %12.1f %10s",
+                indexName, dataset, dims, size, radius, op,
+                BenchmarkData.mean(m.nsPerOp), BenchmarkData.stdDev(m.nsPerOp), results));
+    }
+
+    public static void main(String[] args) {
+        SpatialIndexBenchmark benchmark = new SpatialIndexBenchmark();
+        benchmark.readArguments(args);
+        benchmark.run();
+    }
+}
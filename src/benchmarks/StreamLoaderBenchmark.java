@@ -0,0 +1,159 @@
+package benchmarks;
+
+import core.ColumnarDataset;
+import core.Stream;
+import core.StreamObj;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/*
+ * Benchmark of the data set loaders: the BufferedReader, String.split and Double.parseDouble
+ * loader the Stream class used to have ("reader"), against Stream over a MappedCsvReader
+ * ("mapped") and over the data set converted to a ColumnarDataset beforehand ("columnar").
+ * All loaders read the whole file into StreamObj records, one slide at a time for Stream.
+ *
+ * For every data set the driver runs a number of warm-up iterations followed by measured
+ * iterations, and reports the mean time and heap allocation per record. The checksum over all
+ * the parsed bits must be the same for both loaders. Example:
+ *
+ *   java benchmarks.StreamLoaderBenchmark --datasets shuttle,arrhythmia --warmup 5 --iterations 10
+ */
+public class StreamLoaderBenchmark {
+    private static final String[] LOADERS = { "reader", "mapped", "columnar" };
+
+    private String datasetsDir = "datasets";
+    private String[] datasets = BenchmarkData.DATASETS;
+    private boolean containsClass = false;
+    private int slideSize = 500;
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private void readArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+
+            //check if arg starts with --
+            String arg = args[i];
+            if (arg.indexOf("--") == 0) {
+                switch (arg) {
+                    case "--datasetsDir":
+                        this.datasetsDir = args[i + 1];
+                        break;
+                    case "--datasets":
+                        this.datasets = args[i + 1].split(",");
+                        break;
+                    case "--containsClass":
+                        this.containsClass = Boolean.parseBoolean(args[i + 1]);
+                        break;
+                    case "--slideSize":
+                        this.slideSize = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--warmup":
+                        this.warmupIterations = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--iterations":
+                        this.measurementIterations = Integer.parseInt(args[i + 1]);
+                        break;
+                }
+            }
+        }
+    }
+
+    public void run() throws IOException {
+        System.out.println(String.format("%-8s %-12s %8s %12s %10s %10s %12s %18s",
+                "loader", "dataset", "records", "ns/record", "stddev", "MB/s", "bytes/record", "checksum"));
+
+        for (String dataset : datasets) {
+            String dataFile = datasetsDir + File.separator + dataset + ".csv";
+            long fileBytes = new File(dataFile).length();
+            File columnarFile = File.createTempFile(dataset, ColumnarDataset.EXTENSION);
+            columnarFile.deleteOnExit();
+            ColumnarDataset.convert(dataFile, columnarFile.getPath(), containsClass, false);
+
+            for (String loader : LOADERS) {
+                // MB/s is relative to the CSV file for all the loaders
+                runLoader(loader, dataset, loader.equals("columnar") ? columnarFile.getPath() : dataFile, fileBytes);
+            }
+        }
+    }
+
+    private void runLoader(String loader, String dataset, String dataFile, long fileBytes) throws IOException {
+        double[] nsPerRecord = new double[measurementIterations];
+        double[] allocatedPerRecord = new double[measurementIterations];
+        long records = 0;
+        long checksum = 0;
+        long threadId = Thread.currentThread().getId();
+
+        for (int it = 0; it < warmupIterations + measurementIterations; it++) {
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            ArrayList<StreamObj> loaded = loader.equals("reader") ? loadWithReader(dataFile) : loadWithStream(dataFile);
+            long elapsed = System.nanoTime() - start;
+            long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+            records = loaded.size();
+            checksum = checksum(loaded);
+            if (it >= warmupIterations) {
+                nsPerRecord[it - warmupIterations] = (double) elapsed / Math.max(records, 1);
+                allocatedPerRecord[it - warmupIterations] = (double) allocated / Math.max(records, 1);
+            }
+        }
+
+        double meanNs = BenchmarkData.mean(nsPerRecord);
+        double mbPerSec = records == 0 ? 0 : fileBytes / (meanNs * records / 1e9) / (1024 * 1024);
+        System.out.println(String.format("%-8s %-12s %8d %12.1f %10.1f %10.1f %12.1f %18x",
+                loader, dataset, records, meanNs, BenchmarkData.stdDev(nsPerRecord), mbPerSec,
+                BenchmarkData.mean(allocatedPerRecord), checksum));
+    }
+
+    private ArrayList<StreamObj> loadWithStream(String dataFile) {
+        Stream stream = new Stream();
+        stream.loadFile(dataFile, containsClass);
+        ArrayList<StreamObj> loaded = new ArrayList<>();
+        while (stream.hasNext()) {
+            loaded.addAll(stream.getIncomingData(slideSize));
+        }
+        return loaded;
+    }
+
+    // The former Stream.loadFile
+    private ArrayList<StreamObj> loadWithReader(String dataFile) throws IOException {
+        ArrayList<StreamObj> loaded = new ArrayList<>();
+        try (BufferedReader bfr = new BufferedReader(new FileReader(dataFile))) {
+            String line;
+            while ((line = bfr.readLine()) != null) {
+                String[] atts = line.split(",");
+                int nAttributes = containsClass ? atts.length - 1 : atts.length;
+                double[] d = new double[nAttributes];
+                for (int i = 0; i < d.length; i++) {
+                    d[i] = Double.parseDouble(atts[i]);
+                }
+                loaded.add(new StreamObj(d));
+            }
+        }
+        return loaded;
+    }
+
+    private static long checksum(ArrayList<StreamObj> loaded) {
+        long checksum = 0;
+        for (StreamObj obj : loaded) {
+            for (double v : obj.getValues()) {
+                checksum = 31 * checksum + Double.hashCode(v);
+            }
+        }
+        return checksum;
+    }
+
+    public static void main(String[] args) throws IOException {
+        StreamLoaderBenchmark benchmark = new StreamLoaderBenchmark();
+        benchmark.readArguments(args);
+        benchmark.run();
+    }
+}
@@ -0,0 +1,265 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Binary columnar format for the data sets, read through a memory mapping.
+ *
+ * Layout, little-endian: a header of HEADER_SIZE bytes (magic, version, dimensions, rows,
+ * value width, whether there is a label column), then one column of rows fixed-width values
+ * per dimension, then the label column if any. Values are float64, or float32 for files
+ * converted with float32 set, which halves their size at the cost of precision.
+ *
+ * Nothing is parsed when the file is read: a value is a load from the mapping. This is not a
+ * zero-copy reader, though: the detectors and the distance kernels work on the double[] of
+ * each StreamObj, and a Java array cannot be backed by a mapping, so next() copies every row
+ * once into a new array. What it saves over a CSV file is the parsing. Convert a CSV file with
+ *
+ *   java core.ColumnarDataset --input datasets/shuttle.csv [--output datasets/shuttle.col]
+ *        [--containsClass true] [--float32 true]
+ */
+public class ColumnarDataset implements RecordReader {
+    public static final String EXTENSION = ".col";
+
+    private static final long MAGIC = 0x4c4f43444f434d31L;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    // a column is mapped in blocks of 2^BLOCK_SHIFT rows, so that it may exceed 2 GB
+    private static final int BLOCK_SHIFT = 23;
+    private static final int BLOCK_ROWS = 1 << BLOCK_SHIFT;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final int dimensions;
+    private final long rows;
+    private final int width;
+    private final boolean hasLabels;
+    // mapped blocks by column and block, mapped on first use; the label column comes last
+    private final ByteBuffer[][] blocks;
+    // next row returned by next()
+    private long position;
+
+    private ColumnarDataset(FileChannel channel, int dimensions, long rows, int width, boolean hasLabels) {
+        this.channel = channel;
+        this.dimensions = dimensions;
+        this.rows = rows;
+        this.width = width;
+        this.hasLabels = hasLabels;
+        int nBlocks = (int) ((rows + BLOCK_ROWS - 1) >> BLOCK_SHIFT);
+        this.blocks = new ByteBuffer[dimensions + (hasLabels ? 1 : 0)][nBlocks];
+        this.position = 0;
+    }
+
+    public static ColumnarDataset open(String filename) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getLong() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(filename + " is not a columnar data set");
+            }
+            int dimensions = header.getInt();
+            long rows = header.getLong();
+            int width = header.get();
+            boolean hasLabels = header.get() != 0;
+
+            long columns = dimensions + (hasLabels ? 1 : 0);
+            if (channel.size() < HEADER_SIZE + columns * rows * width) {
+                throw new IOException(filename + " is truncated");
+            }
+            return new ColumnarDataset(channel, dimensions, rows, width, hasLabels);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public boolean hasLabels() {
+        return hasLabels;
+    }
+
+    public double get(long row, int dimension) {
+        ByteBuffer block = block(dimension, row);
+        int offset = (int) (row & (BLOCK_ROWS - 1)) * width;
+        return width == 8 ? block.getDouble(offset) : block.getFloat(offset);
+    }
+
+    public double getLabel(long row) {
+        if (!hasLabels) {
+            throw new IllegalStateException("The data set has no label column");
+        }
+        return get(row, dimensions);
+    }
+
+    public double[] getRow(long row) {
+        double[] values = new double[dimensions];
+        // the row is at the same offset of the same block in every column
+        int b = (int) (row >> BLOCK_SHIFT);
+        int offset = (int) (row & (BLOCK_ROWS - 1)) * width;
+        for (int d = 0; d < dimensions; d++) {
+            ByteBuffer block = blocks[d][b] != null ? blocks[d][b] : block(d, row);
+            values[d] = width == 8 ? block.getDouble(offset) : block.getFloat(offset);
+        }
+        return values;
+    }
+
+    @Override
+    public double[] next() {
+        if (position >= rows) {
+            return null;
+        }
+        return getRow(position++);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer block(int column, long row) {
+        int b = (int) (row >> BLOCK_SHIFT);
+        ByteBuffer block = blocks[column][b];
+        if (block == null) {
+            long first = (long) b << BLOCK_SHIFT;
+            long offset = HEADER_SIZE + (column * rows + first) * width;
+            long length = Math.min(BLOCK_ROWS, rows - first) * width;
+            try {
+                block = channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ORDER);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot map column " + column + " of the data set", e);
+            }
+            blocks[column][b] = block;
+        }
+        return block;
+    }
+
+    // Writes csvFile in the columnar format, with a label column if containsClass. Returns the
+    // number of rows.
+    public static long convert(String csvFile, String outFile, boolean containsClass, boolean float32) throws IOException {
+        // first pass, the column offsets depend on the number of rows
+        int dimensions = -1;
+        long rows = 0;
+        try (MappedCsvReader reader = new MappedCsvReader(csvFile, containsClass)) {
+            double[] values;
+            while ((values = reader.next()) != null) {
+                if (dimensions < 0) {
+                    dimensions = values.length;
+                } else if (values.length != dimensions) {
+                    throw new IOException("Record " + (rows + 1) + " of " + csvFile + " has "
+                            + values.length + " attributes instead of " + dimensions);
+                }
+                rows++;
+            }
+        }
+        dimensions = Math.max(dimensions, 0);
+
+        int width = float32 ? 4 : 8;
+        int columns = dimensions + (containsClass ? 1 : 0);
+        try (FileChannel out = FileChannel.open(Paths.get(outFile), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             MappedCsvReader reader = new MappedCsvReader(csvFile, containsClass)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+            header.putLong(MAGIC).putInt(VERSION).putInt(dimensions).putLong(rows)
+                    .put((byte) width).put((byte) (containsClass ? 1 : 0));
+            header.clear();
+            writeFully(out, header, 0);
+
+            ByteBuffer[] buffers = new ByteBuffer[columns];
+            long[] offsets = new long[columns];
+            for (int c = 0; c < columns; c++) {
+                buffers[c] = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ORDER);
+                offsets[c] = HEADER_SIZE + c * rows * width;
+            }
+
+            double[] values;
+            while ((values = reader.next()) != null) {
+                for (int c = 0; c < columns; c++) {
+                    double v = c < dimensions ? values[c] : reader.getLabel();
+                    if (float32) {
+                        buffers[c].putFloat((float) v);
+                    } else {
+                        buffers[c].putDouble(v);
+                    }
+                    if (!buffers[c].hasRemaining()) {
+                        offsets[c] += flush(out, buffers[c], offsets[c]);
+                    }
+                }
+            }
+            for (int c = 0; c < columns; c++) {
+                flush(out, buffers[c], offsets[c]);
+            }
+        }
+        return rows;
+    }
+
+    private static int flush(FileChannel out, ByteBuffer buffer, long offset) throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        writeFully(out, buffer, offset);
+        buffer.clear();
+        return length;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            offset += out.write(buffer, offset);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String input = null;
+        String output = null;
+        boolean containsClass = false;
+        boolean float32 = false;
+        for (int i = 0; i < args.length; i++) {
+
+            //check if arg starts with --
+            String arg = args[i];
+            if (arg.indexOf("--") == 0) {
+                switch (arg) {
+                    case "--input":
+                        input = args[i + 1];
+                        break;
+                    case "--output":
+                        output = args[i + 1];
+                        break;
+                    case "--containsClass":
+                        containsClass = Boolean.parseBoolean(args[i + 1]);
+                        break;
+                    case "--float32":
+                        float32 = Boolean.parseBoolean(args[i + 1]);
+                        break;
+                }
+            }
+        }
+        if (input == null) {
+            System.out.println("Usage: java core.ColumnarDataset --input <csv file> [--output <file>] "
+                    + "[--containsClass true|false] [--float32 true|false]");
+            return;
+        }
+        if (output == null) {
+            output = (input.endsWith(".csv") ? input.substring(0, input.length() - 4) : input) + EXTENSION;
+        }
+
+        long start = System.nanoTime();
+        long rows = convert(input, output, containsClass, float32);
+        System.out.println("Wrote " + rows + " rows to " + output + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}
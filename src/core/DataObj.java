@@ -14,6 +14,8 @@ public class DataObj<T> {
     public Long id;
     public int count_after;
     protected ArrayList<T> nn_before;
+    // end of the event queue bucket holding this object, 0 if it is not queued
+    public long scheduledTime;
 
     // statistics
     public int nOutlier;
@@ -48,13 +50,11 @@ public class DataObj<T> {
         nInlier  = 0;
     }
 
-    public double dot (DataObj<T> other) {
-        double sum = 0;
-
-        for (int d = 0; d < values.length; d++) {
-            sum += this.values[d] * other.values[d];
-        }
+    public double[] getValues() {
+        return values;
+    }
 
-        return sum;
+    public double dot (DataObj<T> other) {
+        return DistanceKernel.dot(values, other.values);
     }
 }
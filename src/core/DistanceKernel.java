@@ -0,0 +1,80 @@
+package core;
+
+import java.util.List;
+
+/**
+ * Euclidean distance and dot product kernels working directly on coordinate arrays.
+ *
+ * Most callers only need to know whether two objects lie within some threshold of each other
+ * (R, R/2, 3R/2, ...). They should compare squared distances against squared thresholds and
+ * use the bounded variants, which stop summing as soon as the partial sum exceeds the limit.
+ *
+ * The work is delegated to a {@link VectorKernel} chosen once, when this class is loaded:
+ * the Vector API implementation if the jdk.incubator.vector module is present and
+ * SimdVectorKernel was built (it is compiled separately, from src-simd), the scalar loops
+ * otherwise. The system property vector.kernel=scalar|simd forces a choice.
+ */
+public final class DistanceKernel {
+    private static final VectorKernel KERNEL = selectKernel();
+
+    private DistanceKernel() {}
+
+    private static VectorKernel selectKernel() {
+        String requested = System.getProperty("vector.kernel", "auto");
+        if (!requested.equals("scalar")
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (VectorKernel) Class.forName("core.SimdVectorKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("SIMD distance kernel unavailable, using scalar loops: " + e);
+            }
+        } else if (requested.equals("simd")) {
+            System.err.println("SIMD distance kernel requested but jdk.incubator.vector is not loaded"
+                    + " (run with --add-modules jdk.incubator.vector), using scalar loops");
+        }
+        return new ScalarVectorKernel();
+    }
+
+    public static String kernelName() {
+        return KERNEL.name();
+    }
+
+    public static double dot(double[] a, double[] b) {
+        return KERNEL.dot(a, b);
+    }
+
+    // out[r] = dot(rows[r], x) for every row
+    public static void dots(double[][] rows, double[] x, double[] out) {
+        KERNEL.dots(rows, x, out);
+    }
+
+    public static double squaredDistance(double[] a, double[] b) {
+        return KERNEL.squaredDistance(a, b);
+    }
+
+    // Returns the exact squared distance if it does not exceed squaredLimit, otherwise a
+    // partial sum that is already greater than squaredLimit.
+    public static double squaredDistance(double[] a, double[] b, double squaredLimit) {
+        return KERNEL.squaredDistance(a, b, squaredLimit);
+    }
+
+    // Bounded squared distances from q to every point, written to out[0..points.size())
+    public static void squaredDistances(double[] q, List<? extends DataObj<?>> points, double squaredLimit,
+                                        double[] out) {
+        KERNEL.squaredDistances(q, points, squaredLimit, out);
+    }
+
+    public static boolean isWithinSquaredDistance(double[] a, double[] b, double squaredDistance) {
+        return KERNEL.squaredDistance(a, b, squaredDistance) <= squaredDistance;
+    }
+
+    public static double distance(double[] a, double[] b) {
+        return Math.sqrt(KERNEL.squaredDistance(a, b));
+    }
+
+    // Returns the exact distance if it does not exceed limit, otherwise some value greater
+    // than limit.
+    public static double distance(double[] a, double[] b, double limit) {
+        return Math.sqrt(KERNEL.squaredDistance(a, b, limit * limit));
+    }
+}
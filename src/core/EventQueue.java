@@ -0,0 +1,124 @@
+package core;
+
+import java.util.ArrayList;
+
+/**
+ * Calendar queue of objects waiting for an event at a given time.
+ *
+ * Times are grouped into buckets of bucketWidth; bucket b holds the times in
+ * (origin + (b - 1) * bucketWidth, origin + b * bucketWidth]. Objects are released a whole
+ * bucket at a time, once the limit passed to pollDue reaches the end of their bucket, in no
+ * particular order within the bucket. When the limits used are bucket ends (e.g. origin = W,
+ * bucketWidth = slide and limit = windowEnd) an object is therefore released exactly when
+ * its time is <= limit.
+ *
+ * Each object is queued at most once: the end of the bucket it is queued in is kept in
+ * DataObj.scheduledTime. Inserting it again with a time in another bucket only updates that
+ * field and appends it to the new bucket; the copy left in the old bucket is recognised as
+ * stale and skipped when polled. An object inserted with a time whose bucket was already
+ * drained goes to the bucket being drained, so that it is released by the next pollDue.
+ */
+public class EventQueue<T extends DataObj<T>> {
+    private static final long NOT_SCHEDULED = 0L;
+
+    private final long origin;
+    private final long bucketWidth;
+    // ring of buckets; bucket b is stored at b mod ring size
+    private ArrayList<ArrayList<T>> ring;
+    // oldest bucket not yet drained, and the read position in it
+    private long firstBucket;
+    private int readPos;
+    // items held in the ring, stale ones included
+    private int stored;
+
+    public EventQueue(long origin, long bucketWidth, int nBuckets) {
+        this.origin = origin;
+        this.bucketWidth = bucketWidth;
+        this.ring = newRing(Math.max(nBuckets, 2));
+        this.firstBucket = 0;
+        this.readPos = 0;
+        this.stored = 0;
+    }
+
+    private static <T> ArrayList<ArrayList<T>> newRing(int size) {
+        ArrayList<ArrayList<T>> ring = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ring.add(new ArrayList<>());
+        }
+        return ring;
+    }
+
+    public void insert(T elem, long time) {
+        long bucket = bucketOf(time);
+        if (stored > 0 && bucket < firstBucket) {
+            // already due, release it with the bucket being drained
+            bucket = firstBucket;
+        }
+        if (elem.scheduledTime != NOT_SCHEDULED && bucketOf(elem.scheduledTime) == bucket) {
+            // already queued in this bucket
+            return;
+        }
+        elem.scheduledTime = bucketEnd(bucket);
+
+        if (stored == 0) {
+            // restart the ring at this bucket, dropping the already consumed items
+            bucketAt(firstBucket).clear();
+            firstBucket = bucket;
+            readPos = 0;
+        }
+        if (bucket - firstBucket >= ring.size()) {
+            grow(bucket - firstBucket + 1);
+        }
+        bucketAt(bucket).add(elem);
+        stored++;
+    }
+
+    // Removes and returns an object whose bucket ends at or before limit, or null if there
+    // is none.
+    public T pollDue(long limit) {
+        while (stored > 0 && bucketEnd(firstBucket) <= limit) {
+            ArrayList<T> bucket = bucketAt(firstBucket);
+            while (readPos < bucket.size()) {
+                T elem = bucket.get(readPos++);
+                stored--;
+                if (elem.scheduledTime != NOT_SCHEDULED && bucketOf(elem.scheduledTime) == firstBucket) {
+                    elem.scheduledTime = NOT_SCHEDULED;
+                    return elem;
+                }
+            }
+            bucket.clear();
+            readPos = 0;
+            firstBucket++;
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return stored == 0;
+    }
+
+    private long bucketOf(long time) {
+        // ceil((time - origin) / bucketWidth)
+        return -Math.floorDiv(origin - time, bucketWidth);
+    }
+
+    private long bucketEnd(long bucket) {
+        return origin + bucket * bucketWidth;
+    }
+
+    private ArrayList<T> bucketAt(long bucket) {
+        return ring.get((int) Math.floorMod(bucket, (long) ring.size()));
+    }
+
+    private void grow(long minBuckets) {
+        int size = ring.size();
+        while (size < minBuckets) {
+            size <<= 1;
+        }
+        ArrayList<ArrayList<T>> newRing = newRing(size);
+        for (long b = firstBucket; b < firstBucket + ring.size(); b++) {
+            newRing.set((int) Math.floorMod(b, (long) size), bucketAt(b));
+        }
+        ring = newRing;
+    }
+}
@@ -0,0 +1,63 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Set with O(1) add, remove, contains and uniform random pick.
+ *
+ * Elements are kept in an array together with a map from element to its position; removing
+ * an element moves the last one into its slot.
+ */
+public class IndexedSet<T> {
+    private final ArrayList<T> elements;
+    private final HashMap<T, Integer> positions;
+
+    public IndexedSet() {
+        elements = new ArrayList<>();
+        positions = new HashMap<>();
+    }
+
+    public boolean add(T elem) {
+        if (positions.containsKey(elem)) {
+            return false;
+        }
+        positions.put(elem, elements.size());
+        elements.add(elem);
+        return true;
+    }
+
+    public boolean remove(T elem) {
+        Integer pos = positions.remove(elem);
+        if (pos == null) {
+            return false;
+        }
+        T last = elements.remove(elements.size() - 1);
+        if (pos < elements.size()) {
+            elements.set(pos, last);
+            positions.put(last, pos);
+        }
+        return true;
+    }
+
+    public boolean contains(T elem) {
+        return positions.containsKey(elem);
+    }
+
+    public T get(int idx) {
+        return elements.get(idx);
+    }
+
+    public T getRandom(Random random) {
+        return elements.get(random.nextInt(elements.size()));
+    }
+
+    public int size() {
+        return elements.size();
+    }
+
+    public boolean isEmpty() {
+        return elements.isEmpty();
+    }
+}
@@ -0,0 +1,130 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies in nanoseconds, with buckets of logarithmic width as in HdrHistogram.
+ *
+ * Values below 128 get a bucket each; above, each power of two is split into 64 buckets, so a
+ * recorded value is known within 1/64 (1.6%) of itself over the whole range of long, in a
+ * fixed array of about 30 KB. The exact minimum, maximum and sum are kept besides.
+ *
+ * The methods are synchronized, so a histogram filled by a detector thread can be read from
+ * another one while the stream is processed.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    // the top bit of the largest long is bit 62, which shifts it by 56 into the last bucket
+    private static final int BUCKETS = (62 - SUB_BUCKET_BITS + 1) * HALF_SUB_BUCKETS + SUB_BUCKETS;
+
+    private final long[] counts;
+    private long count;
+    private long total;
+    private long min;
+    private long max;
+
+    public LatencyHistogram() {
+        counts = new long[BUCKETS];
+        reset();
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // keep the SUB_BUCKET_BITS top bits of value; they lie in [64, 128)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    // Largest value falling in bucket
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / HALF_SUB_BUCKETS - 1;
+        long subBucket = bucket - (long) shift * HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    // Negative values, e.g. from a clock going back, are recorded as 0
+    public synchronized void record(long value) {
+        value = Math.max(value, 0);
+        counts[bucketOf(value)]++;
+        count++;
+        total += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void add(LatencyHistogram other) {
+        // copied first, so that the two histograms are never locked together
+        LatencyHistogram snapshot = other.copy();
+        synchronized (this) {
+            for (int b = 0; b < BUCKETS; b++) {
+                counts[b] += snapshot.counts[b];
+            }
+            count += snapshot.count;
+            total += snapshot.total;
+            min = Math.min(min, snapshot.min);
+            max = Math.max(max, snapshot.max);
+        }
+    }
+
+    public synchronized LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        System.arraycopy(counts, 0, copy.counts, 0, BUCKETS);
+        copy.count = count;
+        copy.total = total;
+        copy.min = min;
+        copy.max = max;
+        return copy;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public synchronized long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    // Smallest value such that percentile % of the values recorded are at most it, within the
+    // precision of the buckets; 0 if nothing was recorded
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                return Math.min(Math.max(highestValueOf(b), min), max);
+            }
+        }
+        return max;
+    }
+}
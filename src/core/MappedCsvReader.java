@@ -0,0 +1,234 @@
+package core;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Reader of comma separated records that memory-maps the file and parses the bytes straight
+ * into double[], without the String, String[] and boxed values of readLine, split and
+ * Double.parseDouble. The only allocation per record is the returned array.
+ *
+ * The file is mapped in windows of WINDOW_SIZE bytes, so files larger than the address space
+ * of a single mapping are read too; a record must fit in one window.
+ */
+public class MappedCsvReader implements RecordReader {
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    // A decimal with at most MAX_EXACT_DIGITS significant digits times a power of ten up to
+    // 10^22 is computed exactly rounded by a single multiplication or division, since both
+    // operands are exact doubles. Anything else goes to Double.parseDouble.
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final boolean containsClass;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int pos;
+    // class label field of the last record, within window
+    private int labelStart;
+    private int labelEnd;
+
+    // values of the record being parsed, and the bytes of a value parsed by Double.parseDouble
+    private double[] values = new double[16];
+    private byte[] text = new byte[32];
+
+    public MappedCsvReader(String filename, boolean containsClass) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.containsClass = containsClass;
+        map(0);
+    }
+
+    // Values of the next record, without the class label if containsClass; null at the end of
+    // the file. Empty lines are skipped.
+    @Override
+    public double[] next() throws IOException {
+        while (windowStart + pos < fileSize) {
+            int end = findLineEnd();
+            int start = pos;
+            pos = Math.min(end + 1, window.limit());
+
+            int lineEnd = end;
+            if (lineEnd > start && window.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd > start) {
+                return parseRecord(start, lineEnd);
+            }
+        }
+        return null;
+    }
+
+    // Class label of the record last returned by next, as a number
+    public double getLabel() {
+        return parseDouble(labelStart, labelEnd);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private void map(long offset) throws IOException {
+        windowStart = offset;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW_SIZE, fileSize - offset));
+        pos = 0;
+    }
+
+    // Position of the '\n' ending the record at pos, or the window limit for a last record
+    // without one. The window is moved to pos if the record runs past its end.
+    private int findLineEnd() throws IOException {
+        while (true) {
+            int limit = window.limit();
+            for (int i = pos; i < limit; i++) {
+                if (window.get(i) == '\n') {
+                    return i;
+                }
+            }
+            if (windowStart + limit >= fileSize) {
+                return limit;
+            }
+            if (pos == 0) {
+                throw new IOException("Record at offset " + windowStart + " is longer than " + WINDOW_SIZE + " bytes");
+            }
+            map(windowStart + pos);
+        }
+    }
+
+    private double[] parseRecord(int start, int end) {
+        int n = 0;
+        int p = start;
+        while (true) {
+            int fieldEnd = p;
+            while (fieldEnd < end && window.get(fieldEnd) != ',') {
+                fieldEnd++;
+            }
+            if (fieldEnd == end && containsClass) {
+                // the last attribute is the class label
+                labelStart = p;
+                labelEnd = fieldEnd;
+                break;
+            }
+            if (n == values.length) {
+                values = Arrays.copyOf(values, 2 * n);
+            }
+            values[n++] = parseDouble(p, fieldEnd);
+            if (fieldEnd == end) {
+                break;
+            }
+            p = fieldEnd + 1;
+        }
+        return Arrays.copyOf(values, n);
+    }
+
+    private double parseDouble(int from, int to) {
+        int i = from;
+        while (i < to && window.get(i) == ' ') {
+            i++;
+        }
+        int last = to;
+        while (last > i && window.get(last - 1) == ' ') {
+            last--;
+        }
+
+        boolean negative = false;
+        if (i < last && (window.get(i) == '-' || window.get(i) == '+')) {
+            negative = window.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean sawDigit = false;
+        while (i < last && isDigit(window.get(i))) {
+            int d = window.get(i) - '0';
+            sawDigit = true;
+            if (mantissa != 0 || d != 0) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + d;
+                } else {
+                    exponent++;
+                }
+                digits++;
+            }
+            i++;
+        }
+        if (i < last && window.get(i) == '.') {
+            i++;
+            while (i < last && isDigit(window.get(i))) {
+                int d = window.get(i) - '0';
+                sawDigit = true;
+                if (mantissa != 0 || d != 0) {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + d;
+                        exponent--;
+                    }
+                    digits++;
+                } else {
+                    exponent--;
+                }
+                i++;
+            }
+        }
+        if (sawDigit && i < last && (window.get(i) == 'e' || window.get(i) == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < last && (window.get(i) == '-' || window.get(i) == '+')) {
+                negativeExp = window.get(i) == '-';
+                i++;
+            }
+            int exp = 0;
+            boolean sawExpDigit = false;
+            while (i < last && isDigit(window.get(i))) {
+                exp = Math.min(exp * 10 + (window.get(i) - '0'), 100000);
+                sawExpDigit = true;
+                i++;
+            }
+            if (!sawExpDigit) {
+                return parseFallback(from, to);
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+
+        if (!sawDigit || i != last) {
+            // NaN, Infinity, hexadecimal or malformed: let Double.parseDouble decide
+            return parseFallback(from, to);
+        }
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (digits > MAX_EXACT_DIGITS || exponent < -22 || exponent > 22) {
+            return parseFallback(from, to);
+        }
+        double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+        return negative ? -value : value;
+    }
+
+    private double parseFallback(int from, int to) {
+        int length = to - from;
+        if (text.length < length) {
+            text = new byte[Math.max(length, 2 * text.length)];
+        }
+        for (int i = 0; i < length; i++) {
+            text[i] = window.get(from + i);
+        }
+        return Double.parseDouble(new String(text, 0, length, StandardCharsets.ISO_8859_1));
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,146 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/*
+ * Runs several detectors over a single pass of a stream. The slides are read once, on the
+ * calling thread, and handed to every detector; each detector runs on its own thread and
+ * takes the slides from its own bounded queue. Reading blocks when the slowest detector has
+ * queueCapacity slides waiting, so memory stays bounded while the faster detectors run ahead.
+ *
+ * The slides are shared by the detectors, which only read them.
+ */
+public class MultiDetectorRunner {
+    private static final ArrayList<StreamObj> END = new ArrayList<>();
+
+    private final int queueCapacity;
+    private final ArrayList<DetectorRun> runs = new ArrayList<>();
+
+    // A detector, its queue of slides and what it did
+    public static class DetectorRun {
+        public final String name;
+        public final StreamDetector detector;
+        private final ArrayBlockingQueue<ArrayList<StreamObj>> slides;
+        private Thread thread;
+        private volatile Throwable failure;
+
+        // time spent in the detector, including the evaluation at the end of the stream
+        public long busyNanos;
+        public long nObjects;
+        public int nSlides;
+        // CPU time and allocations of the detector per slide
+        public final SlideCostMeter cost;
+
+        DetectorRun(String name, StreamDetector detector, int queueCapacity) {
+            this.name = name;
+            this.detector = detector;
+            this.slides = new ArrayBlockingQueue<>(queueCapacity);
+            this.cost = new SlideCostMeter(detector.getWorkerCost());
+        }
+
+        public double getObjectsPerSecond() {
+            return busyNanos > 0 ? nObjects / (busyNanos / 1e9) : 0;
+        }
+
+        private void consume() {
+            try {
+                ArrayList<StreamObj> slide;
+                while ((slide = slides.take()) != END) {
+                    if (failure != null) {
+                        // keep draining, so that the reader does not block on this queue
+                        continue;
+                    }
+                    try {
+                        long start = System.nanoTime();
+                        cost.begin();
+                        detector.processNewStreamObjects(slide);
+                        cost.end(slide.size());
+                        busyNanos += System.nanoTime() - start;
+                        nObjects += slide.size();
+                        nSlides++;
+                    } catch (RuntimeException | Error e) {
+                        failure = e;
+                    }
+                }
+                if (failure == null) {
+                    long start = System.nanoTime();
+                    detector.evaluateRemainingElemsInWin();
+                    busyNanos += System.nanoTime() - start;
+                }
+            } catch (InterruptedException e) {
+                failure = e;
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            } finally {
+                detector.close();
+            }
+        }
+    }
+
+    public MultiDetectorRunner(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    public void addDetector(String name, StreamDetector detector) {
+        runs.add(new DetectorRun(name, detector, queueCapacity));
+    }
+
+    public List<DetectorRun> getRuns() {
+        return runs;
+    }
+
+    // Feeds every slide of stream to all the detectors, and returns when they have all finished
+    public void run(Stream stream, int slideSize) {
+        for (DetectorRun run : runs) {
+            run.thread = new Thread(run::consume, "detector-" + run.name);
+            run.thread.start();
+        }
+
+        try {
+            while (stream.hasNext()) {
+                ArrayList<StreamObj> slide = stream.getIncomingData(slideSize);
+                for (DetectorRun run : runs) {
+                    run.slides.put(slide);
+                }
+            }
+            for (DetectorRun run : runs) {
+                run.slides.put(END);
+            }
+            for (DetectorRun run : runs) {
+                run.thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (DetectorRun run : runs) {
+                run.thread.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running the detectors", e);
+        } catch (RuntimeException e) {
+            // reading the stream failed; stop the detectors waiting for slides
+            for (DetectorRun run : runs) {
+                run.thread.interrupt();
+            }
+            throw e;
+        }
+
+        for (DetectorRun run : runs) {
+            if (run.failure != null) {
+                throw new IllegalStateException("Detector " + run.name + " failed", run.failure);
+            }
+        }
+    }
+
+    public void printReport() {
+        System.out.println(String.format("%-16s %8s %10s %12s %12s %10s %14s",
+                "detector", "slides", "objects", "busy ms", "objects/s", "outliers", "range queries"));
+        for (DetectorRun run : runs) {
+            HashMap<String, Integer> results = run.detector.getResults();
+            System.out.println(String.format("%-16s %8d %10d %12.2f %12.0f %10d %14d",
+                    run.name, run.nSlides, run.nObjects, run.busyNanos / 1e6, run.getObjectsPerSecond(),
+                    run.detector.getOutliersFound().size(), results.get("nRangeQueriesExecuted")));
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package core;
 
 
+import java.util.ArrayList;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.Vector;
 
 
 public class OutlierDetector<T extends DataObj<T>> {
@@ -16,19 +16,20 @@ public class OutlierDetector<T extends DataObj<T>> {
     private final TreeSet<Outlier<T>> outliersFound;
     protected int windowSize;
     protected int slideSize;
-    // list used to find expired nodes
-    public Vector<T> windowElements;
+    // objects of the current window, used to find expired nodes
+    public SlidingWindow<T> windowElements;
+    // print per-slide diagnostics
+    protected boolean verbose = true;
 
     public OutlierDetector(int windowSize, int slideSize) {
         outliersFound = new TreeSet<>();
 
         this.windowSize = windowSize;
-        // create nodes list of window
-        windowElements = new Vector<>();
+        this.slideSize = slideSize;
+        // create nodes list of window; it holds at most W objects plus the ones of one slide
+        windowElements = new SlidingWindow<>(windowSize + slideSize);
         this.windowStart = FIRST_OBJ_ID;
         this.windowEnd = (long) windowSize;
-        
-        this.slideSize = slideSize;
 
     }
 
@@ -40,6 +41,11 @@ public class OutlierDetector<T extends DataObj<T>> {
             return false;
     }
 
+    // Entries that fell out of the window with the last slide, oldest first
+    protected ArrayList<T> getExpiredEntries() {
+        return windowElements.getExpired(windowStart);
+    }
+
     public void evaluateRemainingElemsInWin() {
         for (T elem : windowElements) {
             evaluateAsOutlier(elem);
@@ -61,6 +67,10 @@ public class OutlierDetector<T extends DataObj<T>> {
         return outliersFound;
     }
 
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
 
 
 }
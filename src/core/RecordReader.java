@@ -0,0 +1,11 @@
+package core;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Sequential reader of the records of a data set file, as read by Stream.
+public interface RecordReader extends Closeable {
+
+    // Attribute values of the next record, without the class label; null at the end of the file
+    double[] next() throws IOException;
+}
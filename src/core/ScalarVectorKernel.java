@@ -0,0 +1,65 @@
+package core;
+
+import java.util.List;
+
+// Plain loops, used when the Vector API is not available.
+final class ScalarVectorKernel implements VectorKernel {
+    // dimensions summed between two checks of the early-abandon condition
+    private static final int ABANDON_BLOCK = 8;
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double squaredDistance(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            double diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double squaredDistance(double[] a, double[] b, double squaredLimit) {
+        int n = a.length;
+        double sum = 0;
+        int i = 0;
+        while (i < n) {
+            int blockEnd = Math.min(i + ABANDON_BLOCK, n);
+            for (; i < blockEnd; i++) {
+                double diff = a[i] - b[i];
+                sum += diff * diff;
+            }
+            if (sum > squaredLimit) {
+                return sum;
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public void dots(double[][] rows, double[] x, double[] out) {
+        for (int r = 0; r < rows.length; r++) {
+            out[r] = dot(rows[r], x);
+        }
+    }
+
+    @Override
+    public void squaredDistances(double[] q, List<? extends DataObj<?>> points, double squaredLimit, double[] out) {
+        for (int i = 0; i < points.size(); i++) {
+            out[i] = squaredDistance(q, points.get(i).getValues(), squaredLimit);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package core;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Wall time, CPU time and allocated bytes of the slides processed by a detector, read from
+ * ThreadMXBean for the thread calling begin and end, plus those of the tasks the detector ran
+ * on other threads meanwhile, as measured by its WorkerCost.
+ *
+ * Unlike the heap in use, which depends on when the collector last ran, the bytes allocated
+ * by a thread only grow with the work it does, so their rate per object sizes the heap for a
+ * given event rate, and the CPU time per object the cores.
+ */
+public class SlideCostMeter {
+    private static final double[] REPORTED_PERCENTILES = {50, 99};
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    // the HotSpot extension, which measures allocations; null on other JVMs
+    private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN =
+            THREAD_BEAN instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) THREAD_BEAN : null;
+    private static final boolean CPU_TIME_SUPPORTED = enableCpuTime();
+    private static final boolean ALLOCATION_SUPPORTED = enableAllocation();
+
+    // tasks run by the detector on other threads, null if it has none
+    private final WorkerCost workers;
+
+    private final LatencyHistogram wallNanos = new LatencyHistogram();
+    private final LatencyHistogram cpuNanos = new LatencyHistogram();
+    private final LatencyHistogram allocatedBytes = new LatencyHistogram();
+    private volatile long nObjects;
+
+    // at the start of the current slide
+    private long startWall;
+    private long startCpu;
+    private long startAllocated;
+
+    public SlideCostMeter() {
+        this(null);
+    }
+
+    public SlideCostMeter(WorkerCost workers) {
+        this.workers = workers;
+    }
+
+    private static boolean enableCpuTime() {
+        if (!THREAD_BEAN.isCurrentThreadCpuTimeSupported()) {
+            return false;
+        }
+        if (!THREAD_BEAN.isThreadCpuTimeEnabled()) {
+            THREAD_BEAN.setThreadCpuTimeEnabled(true);
+        }
+        return THREAD_BEAN.isThreadCpuTimeEnabled();
+    }
+
+    private static boolean enableAllocation() {
+        if (ALLOCATION_BEAN == null || !ALLOCATION_BEAN.isThreadAllocatedMemorySupported()) {
+            return false;
+        }
+        if (!ALLOCATION_BEAN.isThreadAllocatedMemoryEnabled()) {
+            ALLOCATION_BEAN.setThreadAllocatedMemoryEnabled(true);
+        }
+        return ALLOCATION_BEAN.isThreadAllocatedMemoryEnabled();
+    }
+
+    // CPU time and allocated bytes of the current thread so far, 0 if not supported
+    static long currentThreadCpuNanos() {
+        return CPU_TIME_SUPPORTED ? THREAD_BEAN.getCurrentThreadCpuTime() : 0;
+    }
+
+    static long currentThreadAllocatedBytes() {
+        return ALLOCATION_SUPPORTED ? ALLOCATION_BEAN.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    public void begin() {
+        startCpu = currentThreadCpuNanos() + (workers != null ? workers.getCpuNanos() : 0);
+        startAllocated = currentThreadAllocatedBytes() + (workers != null ? workers.getAllocatedBytes() : 0);
+        startWall = System.nanoTime();
+    }
+
+    // Ends a slide of slideObjects objects started by begin, on the same thread
+    public void end(int slideObjects) {
+        wallNanos.record(System.nanoTime() - startWall);
+        if (CPU_TIME_SUPPORTED) {
+            long cpu = currentThreadCpuNanos() + (workers != null ? workers.getCpuNanos() : 0);
+            cpuNanos.record(cpu - startCpu);
+        }
+        if (ALLOCATION_SUPPORTED) {
+            long allocated = currentThreadAllocatedBytes() + (workers != null ? workers.getAllocatedBytes() : 0);
+            allocatedBytes.record(allocated - startAllocated);
+        }
+        nObjects += slideObjects;
+    }
+
+    public boolean isCpuTimeSupported() {
+        return CPU_TIME_SUPPORTED;
+    }
+
+    public boolean isAllocationSupported() {
+        return ALLOCATION_SUPPORTED;
+    }
+
+    public long getObjects() {
+        return nObjects;
+    }
+
+    // Snapshots of the per-slide values
+    public LatencyHistogram getWallNanos() {
+        return wallNanos.copy();
+    }
+
+    public LatencyHistogram getCpuNanos() {
+        return cpuNanos.copy();
+    }
+
+    public LatencyHistogram getAllocatedBytes() {
+        return allocatedBytes.copy();
+    }
+
+    // The total and the average per object of each measure, and its distribution per slide
+    public void printReport(PrintStream out) {
+        long objects = nObjects;
+        LatencyHistogram wall = getWallNanos();
+        StringBuilder header = new StringBuilder(String.format("  %-18s %12s %12s", "per slide (" + wall.getCount() + ")", "total", "per object"));
+        for (double percentile : REPORTED_PERCENTILES) {
+            header.append(String.format(" %12s", "p" + (int) percentile));
+        }
+        header.append(String.format(" %12s", "max"));
+        out.println(header);
+
+        printLine(out, "wall time (us)", wall, objects, 1e3);
+        if (CPU_TIME_SUPPORTED) {
+            printLine(out, "CPU time (us)", getCpuNanos(), objects, 1e3);
+        } else {
+            out.println(String.format("  %-18s %12s", "CPU time (us)", "n/a"));
+        }
+        if (ALLOCATION_SUPPORTED) {
+            printLine(out, "allocated (bytes)", getAllocatedBytes(), objects, 1);
+        } else {
+            out.println(String.format("  %-18s %12s", "allocated (bytes)", "n/a"));
+        }
+    }
+
+    private static void printLine(PrintStream out, String label, LatencyHistogram histogram, long objects, double unit) {
+        StringBuilder line = new StringBuilder(String.format("  %-18s %12.0f %12.3f", label,
+                histogram.getTotal() / unit, objects > 0 ? histogram.getTotal() / unit / objects : 0));
+        for (double percentile : REPORTED_PERCENTILES) {
+            line.append(String.format(" %12.1f", histogram.getValueAtPercentile(percentile) / unit));
+        }
+        line.append(String.format(" %12.1f", histogram.getMax() / unit));
+        out.println(line);
+    }
+}
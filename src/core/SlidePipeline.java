@@ -0,0 +1,84 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/*
+ * Reads the slides of a Stream ahead of the detector, on a producer thread, so that parsing
+ * the file overlaps with processing the slides.
+ *
+ * At most capacity slides wait in the queue; the producer blocks when the detector falls
+ * behind, which bounds the memory to capacity slides. The end of the stream, or a failure of
+ * the producer, is passed through the queue as an END marker.
+ */
+public class SlidePipeline implements AutoCloseable {
+    private static final ArrayList<StreamObj> END = new ArrayList<>();
+
+    private final ArrayBlockingQueue<ArrayList<StreamObj>> slides;
+    private final Thread producer;
+    private volatile Throwable failure;
+
+    // slide taken from the queue but not yet returned by nextSlide
+    private ArrayList<StreamObj> next;
+    private boolean ended;
+
+    // The stream must not be used by the caller after this
+    public SlidePipeline(Stream stream, int slideSize, int capacity) {
+        this.slides = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.producer = new Thread(() -> produce(stream, slideSize), "slide-producer");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    private void produce(Stream stream, int slideSize) {
+        try {
+            try {
+                while (stream.hasNext()) {
+                    slides.put(stream.getIncomingData(slideSize));
+                }
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+            slides.put(END);
+        } catch (InterruptedException e) {
+            // closed by the consumer
+        } finally {
+            stream.close();
+        }
+    }
+
+    // Blocks until the next slide has been read or the stream has ended
+    public boolean hasNext() {
+        if (next == null && !ended) {
+            try {
+                next = slides.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a slide", e);
+            }
+            if (next == END) {
+                next = null;
+                ended = true;
+                if (failure != null) {
+                    throw new IllegalStateException("Reading the stream failed", failure);
+                }
+            }
+        }
+        return next != null;
+    }
+
+    public ArrayList<StreamObj> nextSlide() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ArrayList<StreamObj> slide = next;
+        next = null;
+        return slide;
+    }
+
+    @Override
+    public void close() {
+        producer.interrupt();
+    }
+}
@@ -0,0 +1,140 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Ring buffer holding the objects of the current window, indexed by object id.
+ *
+ * Objects must be added in increasing id order. The slot of an object is its id modulo the
+ * capacity, so appending, looking up an object by id and removing it are O(1), and expiring a
+ * slide only touches the slots of the expired objects. Ids do not need to be contiguous: the
+ * slots of missing ids are left empty. The capacity grows if the span of ids held at once
+ * exceeds it, which does not happen when it is sized to W + slide.
+ */
+public class SlidingWindow<T extends DataObj<T>> implements Iterable<T> {
+    private Object[] slots;
+    private int mask;
+    // ids of the objects held lie in [headId, tailId)
+    private long headId;
+    private long tailId;
+    private int size;
+
+    public SlidingWindow(int capacity) {
+        int slotCount = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        slots = new Object[slotCount];
+        mask = slotCount - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void add(T elem) {
+        long id = elem.id;
+        if (size == 0) {
+            headId = id;
+            tailId = id;
+        } else if (id < tailId) {
+            throw new IllegalArgumentException("Object " + id + " added after object " + (tailId - 1));
+        }
+        if (id - headId >= slots.length) {
+            grow(id - headId + 1);
+        }
+        slots[slot(id)] = elem;
+        tailId = id + 1;
+        size++;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(long id) {
+        if (id < headId || id >= tailId) {
+            return null;
+        }
+        return (T) slots[slot(id)];
+    }
+
+    public boolean contains(T elem) {
+        return elem.id != null && get(elem.id) == elem;
+    }
+
+    public boolean remove(T elem) {
+        if (!contains(elem)) {
+            return false;
+        }
+        slots[slot(elem.id)] = null;
+        size--;
+        // keep headId on the oldest object held
+        while (headId < tailId && slots[slot(headId)] == null) {
+            headId++;
+        }
+        return true;
+    }
+
+    // Objects with id < windowStart, oldest first. They are not removed.
+    public ArrayList<T> getExpired(long windowStart) {
+        ArrayList<T> expired = new ArrayList<>();
+        long end = Math.min(windowStart, tailId);
+        for (long id = headId; id < end; id++) {
+            T elem = get(id);
+            if (elem != null) {
+                expired.add(elem);
+            }
+        }
+        return expired;
+    }
+
+    private int slot(long id) {
+        return (int) (id & mask);
+    }
+
+    private void grow(long minSlots) {
+        int slotCount = slots.length;
+        while (slotCount < minSlots) {
+            slotCount <<= 1;
+        }
+        Object[] newSlots = new Object[slotCount];
+        int newMask = slotCount - 1;
+        for (long id = headId; id < tailId; id++) {
+            newSlots[(int) (id & newMask)] = slots[slot(id)];
+        }
+        slots = newSlots;
+        mask = newMask;
+    }
+
+    // Iterates oldest first. The window must not be modified while iterating.
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private long nextId = skipEmpty(headId);
+
+            private long skipEmpty(long id) {
+                while (id < tailId && slots[slot(id)] == null) {
+                    id++;
+                }
+                return id;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nextId < tailId;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (nextId >= tailId) {
+                    throw new NoSuchElementException();
+                }
+                T elem = (T) slots[slot(nextId)];
+                nextId = skipEmpty(nextId + 1);
+                return elem;
+            }
+        };
+    }
+}
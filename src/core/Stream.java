@@ -5,15 +5,33 @@ import java.io.*;
 import java.util.*;
 
 
+/*
+ * Pull-based reader of a data set file. Records are parsed lazily, as getIncomingData asks for
+ * them, so memory depends on the slide and the read-ahead buffer instead of the file size.
+ * CSV files are read by a MappedCsvReader, files in the binary format of ColumnarDataset
+ * (extension .col) straight from their mapping.
+ */
 public class Stream {
+    public static final int DEFAULT_READ_AHEAD = 1024;
+
+    // parsed records not yet handed out, at most readAhead of them
     private final Queue<StreamObj> dataStream;
+    private final int readAhead;
+    private RecordReader reader;
+    private String fileName;
 
 
     public Stream() {
-        dataStream = new ArrayDeque<>();
+        this(DEFAULT_READ_AHEAD);
+    }
+
+    public Stream(int readAhead) {
+        this.dataStream = new ArrayDeque<>();
+        this.readAhead = Math.max(1, readAhead);
     }
 
     public int getStreamDataDimensions() {
+        fillBuffer();
         if (dataStream.peek() != null) {
             return dataStream.peek().dimensions();
         } else {
@@ -22,48 +40,71 @@ public class Stream {
     }
 
     public boolean hasNext() {
+        fillBuffer();
         return !dataStream.isEmpty();
     }
 
     public ArrayList<StreamObj> getIncomingData(int length) {
         ArrayList<StreamObj> results = new ArrayList<>();
 
-        int dataSize = Math.min(dataStream.size(), length);
-        for (int i = 0; i < dataSize; i++) {
+        while (results.size() < length) {
+            if (dataStream.isEmpty()) {
+                fillBuffer();
+                if (dataStream.isEmpty()) {
+                    break;
+                }
+            }
             results.add(this.dataStream.remove());
         }
 
         return results;
     }
 
+    // Throws UncheckedIOException if the file cannot be opened, as do the methods reading records
+    // if the file cannot be read
     public void loadFile(String filename, boolean containsClass) {
+        close();
+        dataStream.clear();
+        fileName = filename;
         try {
-            BufferedReader bfr = new BufferedReader(new FileReader(filename));
-            String line;
+            if (filename.endsWith(ColumnarDataset.EXTENSION)) {
+                // labels are stored apart from the attributes, so containsClass does not apply
+                reader = ColumnarDataset.open(filename);
+            } else {
+                reader = new MappedCsvReader(filename, containsClass);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open data set " + filename, e);
+        }
+    }
+
+    public void close() {
+        if (reader != null) {
             try {
-                while ((line = bfr.readLine()) != null) {
-                    String[] atts = line.split(",");
-                    int nAttributes;
-                    if (containsClass) {
-                        nAttributes = atts.length - 1;
-                    } else {
-                        nAttributes = atts.length;
-                    }
-                    double[] d = new double[nAttributes];
-                    for (int i = 0; i < d.length; i++) {
-
-                        d[i] = Double.parseDouble(atts[i]);
-                    }
-                    StreamObj streamObj = new StreamObj(d);
-                    dataStream.add(streamObj);
-                }
+                reader.close();
             } catch (IOException e) {
-                // TODO Auto-generated catch block
                 e.printStackTrace();
             }
-        } catch (FileNotFoundException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            reader = null;
+        }
+    }
+
+    // Parse records until the buffer is full or the file ends. The file is closed at its end.
+    private void fillBuffer() {
+        if (reader == null) {
+            return;
+        }
+        try {
+            double[] values;
+            while (dataStream.size() < readAhead && (values = reader.next()) != null) {
+                dataStream.add(new StreamObj(values));
+            }
+            if (dataStream.size() < readAhead) {
+                close();
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Failed to read data set " + fileName, e);
         }
     }
 
@@ -75,5 +116,3 @@ public class Stream {
     }
 
 }
-
-
@@ -0,0 +1,32 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+
+// Entry points shared by the detectors, for the drivers that run any of them
+public interface StreamDetector {
+
+    // Processes the objects of the next slide of the stream
+    void processNewStreamObjects(ArrayList<StreamObj> streamObjs);
+
+    // Records the outliers among the objects still in the window at the end of the stream
+    void evaluateRemainingElemsInWin();
+
+    Set<? extends Outlier<?>> getOutliersFound();
+
+    // Statistics of the run: nBothInlierOutlier, nOnlyInlier, nOnlyOutlier, nRangeQueriesExecuted
+    HashMap<String, Integer> getResults();
+
+    void setVerbose(boolean verbose);
+
+    // Cost of the tasks the detector runs on threads other than the calling one, null if it
+    // does all its work on the calling thread
+    default WorkerCost getWorkerCost() {
+        return null;
+    }
+
+    // Stops the threads the detector started; its results can still be read afterwards
+    default void close() {
+    }
+}
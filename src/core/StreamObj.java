@@ -30,9 +30,11 @@ public class StreamObj implements DistanceFunctions.EuclideanCoordinate, Compara
     public StreamObj(double... values) {
         this.values = values;
 
+        // hash all bits of the coordinates, so that normalized data (all coordinates in
+        // [0, 1)) does not collapse to a few hash codes; -0.0 equals 0.0 so it hashes the same
         int h = 1;
         for (double value : values) {
-            h = 31 * (int) h + (int) value;
+            h = 31 * h + Double.hashCode(value == 0.0 ? 0.0 : value);
         }
         this.hashCode = h;
     }
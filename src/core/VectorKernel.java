@@ -0,0 +1,27 @@
+package core;
+
+import java.util.List;
+
+/**
+ * Arithmetic over coordinate arrays used by the distance and LSH hashing hot paths.
+ *
+ * Implementations are stateless. {@link DistanceKernel} picks one of them once at startup
+ * and all callers go through its static methods.
+ */
+public interface VectorKernel {
+    String name();
+
+    double dot(double[] a, double[] b);
+
+    double squaredDistance(double[] a, double[] b);
+
+    // Returns the exact squared distance if it does not exceed squaredLimit, otherwise a
+    // partial sum that is already greater than squaredLimit.
+    double squaredDistance(double[] a, double[] b, double squaredLimit);
+
+    // out[r] = dot(rows[r], x) for every row
+    void dots(double[][] rows, double[] x, double[] out);
+
+    // out[i] = squaredDistance(q, points.get(i).getValues(), squaredLimit) for every point
+    void squaredDistances(double[] q, List<? extends DataObj<?>> points, double squaredLimit, double[] out);
+}
@@ -0,0 +1,42 @@
+package core;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * CPU time and allocated bytes of the tasks a detector runs on threads of its own (the search
+ * pool of MCOD with --threads, the shards of ShardedMCOD). Pool threads come and go, so each
+ * task is measured on the thread running it rather than the threads afterwards. A
+ * SlideCostMeter adds these to the cost of the detector thread.
+ */
+public class WorkerCost {
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    // task, measured when it runs on another thread than the calling one; a pool may run a
+    // task on the thread waiting for it, whose cost the meter of that thread already counts
+    public <T> Callable<T> wrap(Callable<T> task) {
+        Thread submitter = Thread.currentThread();
+        return () -> {
+            if (Thread.currentThread() == submitter) {
+                return task.call();
+            }
+            long startCpu = SlideCostMeter.currentThreadCpuNanos();
+            long startAllocated = SlideCostMeter.currentThreadAllocatedBytes();
+            try {
+                return task.call();
+            } finally {
+                cpuNanos.add(SlideCostMeter.currentThreadCpuNanos() - startCpu);
+                allocatedBytes.add(SlideCostMeter.currentThreadAllocatedBytes() - startAllocated);
+            }
+        };
+    }
+
+    public long getCpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+}
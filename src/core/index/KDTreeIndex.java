@@ -0,0 +1,81 @@
+package core.index;
+
+import core.StreamObj;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * SpatialIndex over a KD-tree: each inner node cuts the space at the median of its objects
+ * along the coordinate with the largest spread.
+ */
+public class KDTreeIndex<T> extends PartitionTreeIndex<T> {
+
+    // Objects with point[dim] < value go left
+    private static class AxisSplit implements Split {
+        final int dim;
+        final double value;
+
+        AxisSplit(int dim, double value) {
+            this.dim = dim;
+            this.value = value;
+        }
+
+        @Override
+        public boolean goesLeft(double[] point) {
+            return point[dim] < value;
+        }
+
+        @Override
+        public int reach(double[] query, double range) {
+            // the distance to any object is at least the distance along dim to the cut
+            double diff = query[dim] - value;
+            double limit = range * (1 + PRUNE_SLACK);
+            return (diff <= limit ? LEFT : 0) | (-diff <= limit ? RIGHT : 0);
+        }
+    }
+
+    public KDTreeIndex(Function<? super T, StreamObj> pointOf) {
+        super(pointOf);
+    }
+
+    @Override
+    protected Split chooseSplit(List<T> objs) {
+        int dims = valuesOf(objs.get(0)).length;
+        int dim = -1;
+        double maxSpread = 0;
+        for (int d = 0; d < dims; d++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (T obj : objs) {
+                double v = valuesOf(obj)[d];
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+            if (max - min > maxSpread) {
+                maxSpread = max - min;
+                dim = d;
+            }
+        }
+        if (dim < 0) {
+            return null;
+        }
+
+        double[] values = new double[objs.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = valuesOf(objs.get(i))[dim];
+        }
+        Arrays.sort(values);
+        double median = values[values.length / 2];
+        if (median == values[0]) {
+            // the lower half is all equal to the minimum, cut right above it instead
+            int i = values.length / 2;
+            while (values[i] == values[0]) {
+                i++;
+            }
+            median = values[i];
+        }
+        return new AxisSplit(dim, median);
+    }
+}
@@ -0,0 +1,127 @@
+package core.index;
+
+import core.StreamObj;
+import core.mcodbase.MTreeStreamObjects;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * SpatialIndex over an M-tree.
+ *
+ * The M-tree looks its objects up with equals, so it holds one point per set of coordinates;
+ * the objects sharing those coordinates are kept in a list next to it.
+ */
+public class MTreeIndex<T> implements SpatialIndex<T> {
+    private final Function<? super T, StreamObj> pointOf;
+    private final MTreeStreamObjects mtree;
+    // objects by coordinates, with the point inserted in the mtree for them
+    private final HashMap<StreamObj, PointObjects<T>> objsByPoint;
+    private int size;
+
+    private static class PointObjects<T> {
+        final StreamObj point;
+        final ArrayList<T> objs = new ArrayList<>(1);
+
+        PointObjects(StreamObj point) {
+            this.point = point;
+        }
+    }
+
+    public MTreeIndex(Function<? super T, StreamObj> pointOf) {
+        this.pointOf = pointOf;
+        this.mtree = new MTreeStreamObjects();
+        this.objsByPoint = new HashMap<>();
+        this.size = 0;
+    }
+
+    @Override
+    public void add(T obj) {
+        StreamObj point = pointOf.apply(obj);
+        PointObjects<T> entry = objsByPoint.get(point);
+        if (entry == null) {
+            // first object with these coordinates, insert its point at mtree
+            entry = new PointObjects<>(point);
+            objsByPoint.put(point, entry);
+            mtree.add(point);
+        }
+        entry.objs.add(obj);
+        size++;
+    }
+
+    @Override
+    public boolean remove(T obj) {
+        PointObjects<T> entry = objsByPoint.get(pointOf.apply(obj));
+        if (entry == null || !removeIdentical(entry.objs, obj)) {
+            return false;
+        }
+        size--;
+        if (entry.objs.isEmpty()) {
+            // point no longer referenced, delete it from mtree
+            objsByPoint.remove(entry.point);
+            mtree.remove(entry.point);
+        }
+        return true;
+    }
+
+    static <T> boolean removeIdentical(ArrayList<T> objs, T obj) {
+        for (int i = 0; i < objs.size(); i++) {
+            if (objs.get(i) == obj) {
+                objs.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Results<T> rangeSearch(T query, double range) {
+        Results<T> results = new Results<>();
+        MTreeStreamObjects.Query found = mtree.getNearestByRange(pointOf.apply(query), range);
+        for (MTreeStreamObjects.ResultItem q : found) {
+            for (T obj : objsByPoint.get(q.data).objs) {
+                results.add(new Result<>(obj, q.distance));
+            }
+        }
+        results.candidates = found.getCandidates();
+        return results;
+    }
+
+    // The queries share a single traversal of the mtree
+    @Override
+    public List<Results<T>> rangeSearchAll(List<? extends T> queries, double range) {
+        ArrayList<StreamObj> points = new ArrayList<>(queries.size());
+        for (T query : queries) {
+            points.add(pointOf.apply(query));
+        }
+        int[] candidates = new int[points.size()];
+        List<Results<T>> results = new ArrayList<>(queries.size());
+        for (List<MTreeStreamObjects.ResultItem> items : mtree.getAllByRange(points, range, candidates)) {
+            Results<T> found = new Results<>();
+            for (MTreeStreamObjects.ResultItem q : items) {
+                for (T obj : objsByPoint.get(q.data).objs) {
+                    found.add(new Result<>(obj, q.distance));
+                }
+            }
+            found.candidates = candidates[results.size()];
+            results.add(found);
+        }
+        return results;
+    }
+
+    @Override
+    public int countWithinRange(T query, double range) {
+        int count = 0;
+        for (MTreeStreamObjects.ResultItem q : mtree.getNearestByRange(pointOf.apply(query), range)) {
+            count += objsByPoint.get(q.data).objs.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,199 @@
+package core.index;
+
+import core.DistanceKernel;
+import core.StreamObj;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Binary space partitioning tree with buckets of objects at the leaves; the base of the
+ * KD-tree and the VP-tree, which only differ in how a node splits its objects.
+ *
+ * A leaf that overflows is split in two. Stream data often arrives sorted along some
+ * direction, which keeps splitting the same side of the tree, so the whole tree is rebuilt,
+ * balanced, when it gets too deep or when as many objects have been removed as it holds.
+ *
+ * A leaf whose objects all have the same coordinates cannot be split; it is marked as such,
+ * and takes further objects at those coordinates without being rebuilt.
+ */
+abstract class PartitionTreeIndex<T> implements SpatialIndex<T> {
+    protected static final int BUCKET_SIZE = 16;
+    // relative margin for the pruning tests, so that rounding in the distances cannot prune a
+    // subtree holding an object exactly at the query range
+    protected static final double PRUNE_SLACK = 1e-9;
+
+    protected static final int LEFT = 1;
+    protected static final int RIGHT = 2;
+
+    protected final Function<? super T, StreamObj> pointOf;
+    private Node<T> root;
+    private int size;
+    private int removedSinceBuild;
+
+    // How an inner node divides the space between its children
+    protected interface Split {
+        boolean goesLeft(double[] point);
+
+        // LEFT and/or RIGHT: the children that may hold objects within range of query
+        int reach(double[] query, double range);
+    }
+
+    private static class Node<T> {
+        // inner nodes
+        Split split;
+        Node<T> left;
+        Node<T> right;
+        // leaves
+        ArrayList<T> objs;
+        // whether the objects of the leaf all have the same coordinates
+        boolean unsplittable;
+
+        static <T> Node<T> leaf(ArrayList<T> objs) {
+            Node<T> node = new Node<>();
+            node.objs = objs;
+            return node;
+        }
+    }
+
+    protected PartitionTreeIndex(Function<? super T, StreamObj> pointOf) {
+        this.pointOf = pointOf;
+        this.root = Node.leaf(new ArrayList<>());
+        this.size = 0;
+        this.removedSinceBuild = 0;
+    }
+
+    // Split dividing objs in two non-empty parts, or null if they cannot be told apart
+    protected abstract Split chooseSplit(List<T> objs);
+
+    protected double[] valuesOf(T obj) {
+        return pointOf.apply(obj).getValues();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void add(T obj) {
+        double[] p = valuesOf(obj);
+        int depth = 0;
+        Node<T> node = root;
+        Node<T> parent = null;
+        while (node.split != null) {
+            parent = node;
+            node = node.split.goesLeft(p) ? node.left : node.right;
+            depth++;
+        }
+        node.objs.add(obj);
+        size++;
+
+        if (node.objs.size() > BUCKET_SIZE
+                && !(node.unsplittable && Arrays.equals(p, valuesOf(node.objs.get(0))))) {
+            Node<T> rebuilt = build(node.objs);
+            if (parent == null) {
+                root = rebuilt;
+            } else if (parent.left == node) {
+                parent.left = rebuilt;
+            } else {
+                parent.right = rebuilt;
+            }
+        }
+        if (depth > maxDepth()) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public boolean remove(T obj) {
+        double[] p = valuesOf(obj);
+        Node<T> node = root;
+        while (node.split != null) {
+            node = node.split.goesLeft(p) ? node.left : node.right;
+        }
+        if (!MTreeIndex.removeIdentical(node.objs, obj)) {
+            return false;
+        }
+        size--;
+        removedSinceBuild++;
+        if (removedSinceBuild > size + BUCKET_SIZE) {
+            rebuild();
+        }
+        return true;
+    }
+
+    // depth allowed before the tree is rebuilt: twice that of a balanced tree, plus some
+    private int maxDepth() {
+        int leaves = size / BUCKET_SIZE + 1;
+        return 2 * (32 - Integer.numberOfLeadingZeros(leaves)) + 8;
+    }
+
+    private void rebuild() {
+        ArrayList<T> objs = new ArrayList<>(size);
+        collect(root, objs);
+        root = build(objs);
+        removedSinceBuild = 0;
+    }
+
+    private void collect(Node<T> node, ArrayList<T> objs) {
+        if (node.split == null) {
+            objs.addAll(node.objs);
+        } else {
+            collect(node.left, objs);
+            collect(node.right, objs);
+        }
+    }
+
+    private Node<T> build(List<T> objs) {
+        if (objs.size() <= BUCKET_SIZE) {
+            return Node.leaf(new ArrayList<>(objs));
+        }
+        Split split = chooseSplit(objs);
+        if (split == null) {
+            // all the objects have the same coordinates
+            Node<T> leaf = Node.leaf(new ArrayList<>(objs));
+            leaf.unsplittable = true;
+            return leaf;
+        }
+        ArrayList<T> left = new ArrayList<>();
+        ArrayList<T> right = new ArrayList<>();
+        for (T obj : objs) {
+            (split.goesLeft(valuesOf(obj)) ? left : right).add(obj);
+        }
+        Node<T> node = new Node<>();
+        node.split = split;
+        node.left = build(left);
+        node.right = build(right);
+        return node;
+    }
+
+    @Override
+    public Results<T> rangeSearch(T query, double range) {
+        Results<T> results = new Results<>();
+        search(root, valuesOf(query), range, results);
+        return results;
+    }
+
+    private void search(Node<T> node, double[] q, double range, Results<T> results) {
+        if (node.split == null) {
+            results.candidates += node.objs.size();
+            for (T obj : node.objs) {
+                double distance = DistanceKernel.distance(q, valuesOf(obj), range);
+                if (distance <= range) {
+                    results.add(new Result<>(obj, distance));
+                }
+            }
+            return;
+        }
+        int reach = node.split.reach(q, range);
+        if ((reach & LEFT) != 0) {
+            search(node.left, q, range, results);
+        }
+        if ((reach & RIGHT) != 0) {
+            search(node.right, q, range, results);
+        }
+    }
+}
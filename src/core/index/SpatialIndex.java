@@ -0,0 +1,77 @@
+package core.index;
+
+import core.StreamObj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Index of objects in euclidean space answering the range queries of the detectors.
+ *
+ * The coordinates of an object are read through the point function given to the
+ * implementation, and must not change while the object is indexed. Objects are told apart by
+ * identity, so several objects may have the same coordinates.
+ *
+ * No structure is fastest over all the dimensionalities of the data sets (9 to 274), so the
+ * detectors let the index be chosen by name, see create.
+ */
+public interface SpatialIndex<T> {
+
+    class Result<T> {
+        public final T data;
+        public final double distance;
+
+        public Result(T data, double distance) {
+            this.data = data;
+            this.distance = distance;
+        }
+    }
+
+    // Results of a range search, with the number of indexed objects the search compared with
+    // the query, that is whose distance to it was computed
+    class Results<T> extends ArrayList<Result<T>> {
+        public int candidates;
+    }
+
+    void add(T obj);
+
+    // Returns false if obj is not indexed
+    boolean remove(T obj);
+
+    int size();
+
+    // Objects within range of query, with their distances, in no particular order
+    Results<T> rangeSearch(T query, double range);
+
+    // One range search per query
+    default List<Results<T>> rangeSearchAll(List<? extends T> queries, double range) {
+        List<Results<T>> results = new ArrayList<>(queries.size());
+        for (T query : queries) {
+            results.add(rangeSearch(query, range));
+        }
+        return results;
+    }
+
+    // Number of objects within range of query
+    default int countWithinRange(T query, double range) {
+        return rangeSearch(query, range).size();
+    }
+
+    // Index of the given type: mtree, grid, kd or vp. radius is the radius R of the detector,
+    // which sets the cell size of the grid.
+    static <T> SpatialIndex<T> create(String type, double radius, Function<? super T, StreamObj> pointOf) {
+        switch (type) {
+            case "mtree":
+                return new MTreeIndex<>(pointOf);
+            case "grid":
+                return new GridIndex<>(radius, pointOf);
+            case "kd":
+                return new KDTreeIndex<>(pointOf);
+            case "vp":
+                return new VPTreeIndex<>(pointOf);
+            default:
+                throw new IllegalArgumentException("Unknown spatial index " + type + ", expected mtree, grid, kd or vp");
+        }
+    }
+}
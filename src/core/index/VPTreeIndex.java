@@ -0,0 +1,80 @@
+package core.index;
+
+import core.DistanceKernel;
+import core.StreamObj;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * SpatialIndex over a vantage point tree: each inner node splits its objects by their distance
+ * to a vantage point, at the median distance. Only distances are used for pruning, which keeps
+ * working in high dimensions where the cuts of a KD-tree along single coordinates do not.
+ */
+public class VPTreeIndex<T> extends PartitionTreeIndex<T> {
+
+    // Objects closer than mu to the vantage point go left
+    private static class BallSplit implements Split {
+        final double[] vantage;
+        final double mu;
+
+        BallSplit(double[] vantage, double mu) {
+            this.vantage = vantage;
+            this.mu = mu;
+        }
+
+        @Override
+        public boolean goesLeft(double[] point) {
+            return DistanceKernel.distance(vantage, point) < mu;
+        }
+
+        @Override
+        public int reach(double[] query, double range) {
+            // by the triangle inequality, objects inside the ball are farther than d - mu from
+            // the query and objects outside it at least mu - d
+            double d = DistanceKernel.distance(vantage, query);
+            double limit = range + PRUNE_SLACK * (range + d + mu);
+            return (d - mu <= limit ? LEFT : 0) | (mu - d <= limit ? RIGHT : 0);
+        }
+    }
+
+    public VPTreeIndex(Function<? super T, StreamObj> pointOf) {
+        super(pointOf);
+    }
+
+    @Override
+    protected Split chooseSplit(List<T> objs) {
+        // the object farthest from an arbitrary one lies near the boundary of the set, which
+        // makes a better vantage point than one in the middle
+        double[] first = valuesOf(objs.get(0));
+        double[] vantage = first;
+        double farthest = -1;
+        for (T obj : objs) {
+            double d = DistanceKernel.distance(first, valuesOf(obj));
+            if (d > farthest) {
+                farthest = d;
+                vantage = valuesOf(obj);
+            }
+        }
+
+        double[] distances = new double[objs.size()];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = DistanceKernel.distance(vantage, valuesOf(objs.get(i)));
+        }
+        Arrays.sort(distances);
+        if (distances[distances.length - 1] == distances[0]) {
+            return null;
+        }
+        double mu = distances[distances.length / 2];
+        if (mu == distances[0]) {
+            // the inner half is all at the minimum distance, put the boundary right after it
+            int i = distances.length / 2;
+            while (distances[i] == distances[0]) {
+                i++;
+            }
+            mu = distances[i];
+        }
+        return new BallSplit(vantage.clone(), mu);
+    }
+}
@@ -0,0 +1,20 @@
+package core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("mcod.EventQueueDrain")
+@Label("Event Queue Drain")
+@Category({"Outlier Detection", "MCOD"})
+@Description("Unsafe inliers taken from the event queue and re-evaluated after an entry expired")
+@StackTrace(false)
+public class EventQueueDrainEvent extends jdk.jfr.Event {
+    @Label("Drained")
+    public int drained;
+
+    @Label("New Outliers")
+    public int outliers;
+}
@@ -0,0 +1,20 @@
+package core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("mcod.MicroClusterCreated")
+@Label("Micro-Cluster Created")
+@Category({"Outlier Detection", "MCOD"})
+@Description("Micro-cluster created around a new entry, with the entries of PD it takes in")
+@StackTrace(false)
+public class MicroClusterCreatedEvent extends jdk.jfr.Event {
+    @Label("Center Id")
+    public long centerId;
+
+    @Label("Members")
+    public int members;
+}
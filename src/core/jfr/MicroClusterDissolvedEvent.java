@@ -0,0 +1,21 @@
+package core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("mcod.MicroClusterDissolved")
+@Label("Micro-Cluster Dissolved")
+@Category({"Outlier Detection", "MCOD"})
+@Description("Micro-cluster left with too few entries, removed with its entries reinserted as new ones")
+@StackTrace(false)
+public class MicroClusterDissolvedEvent extends jdk.jfr.Event {
+    @Label("Center Id")
+    public long centerId;
+
+    @Label("Members")
+    @Description("Entries reinserted")
+    public int members;
+}
@@ -0,0 +1,42 @@
+package core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/*
+ * A range search of the micro-clusters or of set PD. There is one per new object, so by
+ * default only searches slower than the threshold are recorded.
+ */
+@Name("mcod.RangeQuery")
+@Label("Range Query")
+@Category({"Outlier Detection", "MCOD"})
+@Description("Range search of the micro-cluster centers or of the entries of set PD")
+@StackTrace(false)
+@Threshold("1 ms")
+public class RangeQueryEvent extends jdk.jfr.Event {
+    @Label("Index")
+    @Description("MC or PD")
+    public String index;
+
+    @Label("Range")
+    public double range;
+
+    @Label("Queries")
+    @Description("Objects searched, more than one for the searches of a whole slide in batch mode")
+    public int queries;
+
+    @Label("Index Size")
+    @Description("Objects held by the index searched")
+    public int indexSize;
+
+    @Label("Candidates")
+    @Description("Indexed objects whose distance to the query was computed, summed over the queries")
+    public int candidates;
+
+    @Label("Results")
+    public int results;
+}
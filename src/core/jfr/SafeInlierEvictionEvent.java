@@ -0,0 +1,24 @@
+package core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("mcod.SafeInlierEviction")
+@Label("Safe Inlier Eviction")
+@Category({"Outlier Detection", "ApproxMCOD"})
+@Description("Random safe inliers removed from set PD by ApproxMCOD to keep it within its size limit")
+@StackTrace(false)
+public class SafeInlierEvictionEvent extends jdk.jfr.Event {
+    @Label("Evicted")
+    public int evicted;
+
+    @Label("PD Size")
+    @Description("Entries of set PD left")
+    public int pdSize;
+
+    @Label("PD Limit")
+    public int pdLimit;
+}
@@ -0,0 +1,51 @@
+package core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * A slide processed by an MCOD detector, from the start of its expiry to its last new object,
+ * with what happened to the micro-clusters and the event queue meanwhile.
+ *
+ * The detector events are recorded without stack traces: they are raised from a few known
+ * places, and walking the stack would cost more than the event.
+ */
+@Name("mcod.Slide")
+@Label("Slide")
+@Category({"Outlier Detection", "MCOD"})
+@Description("Slide of the stream processed by an MCOD detector")
+@StackTrace(false)
+public class SlideEvent extends jdk.jfr.Event {
+    @Label("Detector")
+    public String detector;
+
+    @Label("First Object Id")
+    public long firstObjectId;
+
+    @Label("Objects")
+    public int objects;
+
+    @Label("Micro-Clusters Created")
+    public int microClustersCreated;
+
+    @Label("Micro-Clusters Dissolved")
+    public int microClustersDissolved;
+
+    @Label("Safe Inliers Evicted")
+    @Description("Safe inliers removed from set PD by ApproxMCOD")
+    public int safeInliersEvicted;
+
+    @Label("Events Drained")
+    @Description("Entries taken from the event queue")
+    public int eventsDrained;
+
+    @Label("Active Micro-Clusters")
+    public int activeMicroClusters;
+
+    @Label("PD Size")
+    @Description("Entries of set PD, not in any micro-cluster")
+    public int pdSize;
+}
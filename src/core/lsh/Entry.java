@@ -1,6 +1,7 @@
 package core.lsh;
 
 import core.DataObj;
+import core.DistanceKernel;
 import core.StreamObj;
 
 import java.util.*;
@@ -99,13 +100,7 @@ public class Entry extends DataObj<Entry> implements Comparable<Entry> {
     }
 
     public double dot (Entry other) {
-        double sum = 0;
-
-        for (int d = 0; d < values.length; d++) {
-            sum += this.values[d] * other.values[d];
-        }
-
-        return sum;
+        return DistanceKernel.dot(values, other.values);
     }
 
 }
\ No newline at end of file
@@ -35,7 +35,16 @@ public class HashFunction<T extends DataObj<T>> {
     }
 
     public int hash(T vector){
-        double hashValue = (vector.dot(randomVector) + randomBias) / w;
+        return hashProjection(vector.dot(randomVector));
+    }
+
+    // Hash of a vector whose dot product with the random vector was computed elsewhere
+    public int hashProjection(double projection) {
+        double hashValue = (projection + randomBias) / w;
         return (int) Math.floor(hashValue);
     }
+
+    public double[] getRandomVector() {
+        return randomVector.getValues();
+    }
 }
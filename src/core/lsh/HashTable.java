@@ -1,6 +1,7 @@
 package core.lsh;
 
 import core.DataObj;
+import core.DistanceKernel;
 
 import java.util.*;
 
@@ -48,6 +49,9 @@ public class HashTable<T extends DataObj<T>> {
     private final int numHashes;
     private final int k;
     private final ArrayList<HashFunction<T>> hashFunctions;
+    // random vectors of the hash functions, projected onto in one batch
+    private final double[][] projectionVectors;
+    private final double[] projections;
 
     public HashTable(int numHashes, int w, int dimensions, int k) {
         this.numHashes = numHashes;
@@ -59,6 +63,12 @@ public class HashTable<T extends DataObj<T>> {
         for (int i = 0; i < numHashes; i++) {
             hashFunctions.add(new HashFunction<T>(dimensions, w));
         }
+
+        projectionVectors = new double[numHashes][];
+        for (int i = 0; i < numHashes; i++) {
+            projectionVectors[i] = hashFunctions.get(i).getRandomVector();
+        }
+        projections = new double[numHashes];
     }
 
     public void add(T entry) {
@@ -92,8 +102,9 @@ public class HashTable<T extends DataObj<T>> {
     private String generateCombinedHash(T entry) {
         int[] individualHashes = new int[numHashes];
 
+        DistanceKernel.dots(projectionVectors, entry.getValues(), projections);
         for (int f = 0; f < numHashes; f++) {
-            individualHashes[f] = hashFunctions.get(f).hash(entry);
+            individualHashes[f] = hashFunctions.get(f).hashProjection(projections[f]);
         }
 
         // Combine the individual hashes into one
@@ -23,6 +23,7 @@ package core.mcodbase;
 
 import core.DataObj;
 import core.StreamObj;
+import core.index.SpatialIndex;
 
 import java.util.*;
 
@@ -32,7 +33,7 @@ public class ISBIndex {
         public enum EntryType { OUTLIER, INLIER_MC, INLIER_PD }
 
         public MicroCluster mc;
-        public Set<MicroCluster> Rmc;
+        public TreeSet<MicroCluster> Rmc;
         public EntryType entryType;
 
 
@@ -130,38 +131,35 @@ public class ISBIndex {
         }
     }
 
-    MTreeStreamObjects mtree;
-    Map<Integer, Set<ISBEntry>> mapEntries;
+    // spatial index of the entries
+    SpatialIndex<ISBEntry> index;
+    // entries of the index by id
+    Map<Long, ISBEntry> mapEntries;
     double m_radius;
     int m_k; // k nearest neighbors
 
     public ISBIndex(double radius, int k) {
-        mtree = new MTreeStreamObjects();
-        mapEntries = new HashMap<Integer, Set<ISBEntry>>();
+        this(radius, k, "mtree");
+    }
+
+    // indexType names the SpatialIndex holding the entries: mtree, grid, kd or vp
+    public ISBIndex(double radius, int k, String indexType) {
+        index = SpatialIndex.create(indexType, radius, (ISBEntry entry) -> entry.obj);
+        mapEntries = new HashMap<Long, ISBEntry>();
         m_radius = radius;
         m_k = k;
     }
 
     public int getSize() {
-        int nObjects = 0;
-        for (Set<ISBEntry> setEntries : mapEntries.values()) {
-            nObjects += setEntries.size();
-        }
+        return mapEntries.size();
+    }
 
-        return nObjects;
+    public boolean contains(ISBEntry entry) {
+        return mapEntries.get(entry.id) == entry;
     }
 
     public Vector<ISBEntry> getAllEntries() {
-        Vector<ISBEntry> v = new Vector<>();
-        Iterator it = mapEntries.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry pairs = (Map.Entry) it.next();
-            Set<ISBEntry> setEntries = (Set<ISBEntry>) pairs.getValue();
-            for (ISBEntry n : setEntries) {
-                v.add(n);
-            }
-        }  
-        return v;
+        return new Vector<>(mapEntries.values());
     }
     
     public static class ISBSearchResult {
@@ -174,95 +172,51 @@ public class ISBIndex {
         }
     }
     
-    public Vector<ISBSearchResult> rangeSearch(ISBEntry entry, double radius) {
-        Vector<ISBSearchResult> results = new Vector<>();
-        StreamObj obj;
-        double d;
-        MTreeStreamObjects.Query query = mtree.getNearestByRange(entry.obj, radius);
-        for (MTreeStreamObjects.ResultItem q : query) {
-            // get next obj found within range
-            obj = q.data;
-            // get distance of obj from query
-            d = q.distance;
-            // get all entries referencing obj
-            Vector<ISBEntry> entries = mapGetEntries(obj);
-            for (int i = 0; i < entries.size(); i++)
-                results.add(new ISBSearchResult(entries.get(i), d));
-        }        
-        return results;
+    // Results of a range search, with the number of entries compared with the query
+    public static class ISBSearchResults extends Vector<ISBSearchResult> {
+        public int candidates;
+
+        ISBSearchResults(SpatialIndex.Results<ISBEntry> found) {
+            super(found.size());
+            for (SpatialIndex.Result<ISBEntry> q : found) {
+                add(new ISBSearchResult(q.data, q.distance));
+            }
+            candidates = found.candidates;
+        }
     }
-    
-    public void insert(ISBEntry entry) {
-        // insert object of entry at mtree
-        mtree.add(entry.obj);
-        // insert entry at map
-        mapInsert(entry);
+
+    public ISBSearchResults rangeSearch(ISBEntry entry, double radius) {
+        return new ISBSearchResults(index.rangeSearch(entry, radius));
     }
     
-    public void remove(ISBEntry entry) {
-        // remove from map
-        mapDelete(entry);
-        // check if stream object at mtree is still being referenced
-        if (mapCountObjRefs(entry.obj) <= 0) {
-            // delete stream object from mtree
-            mtree.remove(entry.obj);
+    // One range search per entry; the mtree shares a single traversal among them.
+    // The results of each search are not sorted.
+    public ArrayList<ISBSearchResults> rangeSearchAll(List<ISBEntry> entries, double radius) {
+        ArrayList<ISBSearchResults> results = new ArrayList<>(entries.size());
+        for (SpatialIndex.Results<ISBEntry> found : index.rangeSearchAll(entries, radius)) {
+            results.add(new ISBSearchResults(found));
         }
+        return results;
     }
-    
-    Vector<ISBEntry> mapGetEntries(StreamObj obj) {
-        int h = obj.hashCode();
-        Vector<ISBEntry> v = new Vector<ISBEntry>();
-        if (mapEntries.containsKey(h)) {
-            Set<ISBEntry> s = mapEntries.get(h);
-            ISBEntry entry;
-            Iterator<ISBEntry> i = s.iterator();
-            while (i.hasNext()) {
-                entry = i.next();
-                if (entry.obj.equals(obj))
-                    v.add(entry);
-            }
-        }
-        return v;
+
+    // Number of entries within radius of entry
+    public int countWithinRange(ISBEntry entry, double radius) {
+        return index.countWithinRange(entry, radius);
     }
-    
-    int mapCountObjRefs(StreamObj obj) {
-        int h = obj.hashCode();
-        int iCount = 0;
-        if (mapEntries.containsKey(h)) {
-            Set<ISBEntry> s = mapEntries.get(h);
-            ISBEntry n;
-            Iterator<ISBEntry> i = s.iterator();
-            while (i.hasNext()) {
-                n = i.next();
-                if (n.obj.equals(obj))
-                    iCount++;
-            }
-        }
-        return iCount;
-    }  
-    
-    void mapInsert(ISBEntry entry) {
-        int h = entry.obj.hashCode();
-        Set<ISBEntry> s;
-        if (mapEntries.containsKey(h)) {
-            s = mapEntries.get(h);
-            s.add(entry);
-        }
-        else {
-            s = new HashSet<>();
-            s.add(entry);
-            mapEntries.put(h, s);
+
+    public void insert(ISBEntry entry) {
+        if (contains(entry)) {
+            return;
         }
+        mapEntries.put(entry.id, entry);
+        index.add(entry);
     }
     
-    void mapDelete(ISBEntry entry) {
-        int h = entry.obj.hashCode();
-        if (mapEntries.containsKey(h)) {
-            Set<ISBEntry> s = mapEntries.get(h);
-            s.remove(entry);
-            if (s.isEmpty()) { // ### added
-                mapEntries.remove(h);
-            }
+    public void remove(ISBEntry entry) {
+        if (!contains(entry)) {
+            return;
         }
-    }  
+        mapEntries.remove(entry.id);
+        index.remove(entry);
+    }
 }
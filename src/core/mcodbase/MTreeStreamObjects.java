@@ -20,13 +20,14 @@
 
 package core.mcodbase;
 
+import core.DistanceKernel;
 import core.StreamObj;
 import core.mtree.*;
 import core.mtree.utils.Pair;
 import core.mtree.utils.Utils;
 import java.util.Set;
 
-class MTreeStreamObjects extends MTree<StreamObj> {
+public class MTreeStreamObjects extends MTree<StreamObj> {
 
     private static final PromotionFunction<StreamObj> nonRandomPromotion = new PromotionFunction<StreamObj>() {
 
@@ -36,8 +37,21 @@ class MTreeStreamObjects extends MTree<StreamObj> {
         }
     };
 
-    MTreeStreamObjects() {
-        super(25, DistanceFunctions.EUCLIDEAN,
+    private static final DistanceFunction<StreamObj> euclidean = new DistanceFunction<StreamObj>() {
+
+        @Override
+        public double calculate(StreamObj data1, StreamObj data2) {
+            return DistanceKernel.distance(data1.getValues(), data2.getValues());
+        }
+
+        @Override
+        public double calculate(StreamObj data1, StreamObj data2, double limit) {
+            return DistanceKernel.distance(data1.getValues(), data2.getValues(), limit);
+        }
+    };
+
+    public MTreeStreamObjects() {
+        super(25, euclidean,
                 new ComposedSplitFunction<StreamObj>(
                 nonRandomPromotion,
                 new PartitionFunctions.BalancedPartition<StreamObj>()));
@@ -45,12 +59,12 @@ class MTreeStreamObjects extends MTree<StreamObj> {
 
     public void add(StreamObj data) {
         super.add(data);
-        _check();
+        if (debugChecks) _check();
     }
 
     public boolean remove(StreamObj data) {
         boolean result = super.remove(data);
-        _check();
+        if (debugChecks) _check();
         return result;
     }
 
@@ -24,14 +24,18 @@ package core.mcodbase;
 import core.mtree.DistanceFunctions;
 import core.mcodbase.ISBIndex.ISBEntry;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 public class MicroCluster implements DistanceFunctions.EuclideanCoordinate, Comparable<MicroCluster> {
     public ISBEntry mcc;
     public ArrayList<ISBEntry> entries;
+    // entries of set PD whose Rmc contains this micro-cluster, with their distance to mcc
+    public HashMap<ISBEntry, Double> pdRefs;
 
     public MicroCluster(ISBEntry mcc) {
         this.mcc = mcc;
         entries = new ArrayList<>();
+        pdRefs = new HashMap<>();
         addEntry(mcc);
     }
     
@@ -45,6 +49,14 @@ public class MicroCluster implements DistanceFunctions.EuclideanCoordinate, Comp
             entries.remove(entry);
     }
     
+    public void addPDRef(ISBEntry entry, double distance) {
+        pdRefs.put(entry, distance);
+    }
+
+    public void removePDRef(ISBEntry entry) {
+        pdRefs.remove(entry);
+    }
+
     public int getEntriesCount() {
         return entries.size();
     }
@@ -77,6 +89,11 @@ public class MicroCluster implements DistanceFunctions.EuclideanCoordinate, Comp
         }
     }
 
+    @Override
+    public int hashCode() {
+        return mcc.obj.hashCode();
+    }
+
     @Override
     public int compareTo(MicroCluster that) {
         int dimensions = Math.min(this.dimensions(), that.dimensions());
@@ -0,0 +1,106 @@
+package core.mcodbase;
+
+import core.LatencyHistogram;
+
+import java.io.PrintStream;
+
+/**
+ * Time spent by an MCOD detector in each phase of its slides.
+ *
+ * The time of every phase is summed over a slide and recorded, once per slide, in the
+ * histogram of the phase, so that the percentiles tell which phase makes the slow slides
+ * slow. The phases nest: expiry includes the event queue and the dissolution of
+ * micro-clusters, and a dissolution includes the range searches and micro-cluster creations
+ * of the entries it reinserts. Slides in which a phase does not run record 0 for it; the
+ * self-join of the entries of a slide only runs in batch mode.
+ *
+ * A profiler is driven by the thread of its detector; the histograms can be read from any
+ * thread.
+ */
+public class SlideProfiler {
+
+    public enum Phase {
+        SLIDE("slide"),
+        EXPIRY("expiry"),
+        EVENT_QUEUE("event queue"),
+        MC_SEARCH("MC range search"),
+        PD_SEARCH("PD range search"),
+        SELF_JOIN("slide self-join"),
+        MC_CREATION("MC creation"),
+        MC_DISSOLUTION("MC dissolution");
+
+        public final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9};
+
+    private final LatencyHistogram[] histograms;
+    // time of each phase in the current slide
+    private final long[] slideNanos;
+    private long slideStart;
+
+    public SlideProfiler() {
+        histograms = new LatencyHistogram[PHASES.length];
+        for (int p = 0; p < PHASES.length; p++) {
+            histograms[p] = new LatencyHistogram();
+        }
+        slideNanos = new long[PHASES.length];
+    }
+
+    public void startSlide() {
+        slideStart = System.nanoTime();
+    }
+
+    public void add(Phase phase, long nanos) {
+        slideNanos[phase.ordinal()] += nanos;
+    }
+
+    public void endSlide() {
+        slideNanos[Phase.SLIDE.ordinal()] = System.nanoTime() - slideStart;
+        for (int p = 0; p < PHASES.length; p++) {
+            histograms[p].record(slideNanos[p]);
+            slideNanos[p] = 0;
+        }
+    }
+
+    // Snapshot of the per-slide times of phase
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()].copy();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    // One line per phase with the mean, percentiles and maximum of its time per slide, in ms
+    public void printReport(PrintStream out) {
+        StringBuilder header = new StringBuilder(String.format("  %-16s %8s %10s", "phase (ms/slide)", "slides", "mean"));
+        for (double percentile : REPORTED_PERCENTILES) {
+            header.append(String.format(" %10s", "p" + formatPercentile(percentile)));
+        }
+        header.append(String.format(" %10s", "max"));
+        out.println(header);
+
+        for (Phase phase : PHASES) {
+            LatencyHistogram histogram = getHistogram(phase);
+            StringBuilder line = new StringBuilder(String.format("  %-16s %8d %10.3f",
+                    phase.label, histogram.getCount(), histogram.getMean() / 1e6));
+            for (double percentile : REPORTED_PERCENTILES) {
+                line.append(String.format(" %10.3f", histogram.getValueAtPercentile(percentile) / 1e6));
+            }
+            line.append(String.format(" %10.3f", histogram.getMax() / 1e6));
+            out.println(line);
+        }
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? Integer.toString((int) percentile) : Double.toString(percentile);
+    }
+}
@@ -25,4 +25,16 @@ public interface DistanceFunction<DATA> {
 
 	double calculate(DATA data1, DATA data2);
 
+	/**
+	 * Calculates the distance between two data objects when only distances
+	 * up to {@code limit} are of interest. Implementations may stop as soon
+	 * as the distance is known to exceed {@code limit}.
+	 *
+	 * @return The exact distance if it is not greater than {@code limit};
+	 *         otherwise any value greater than {@code limit}.
+	 */
+	default double calculate(DATA data1, DATA data2, double limit) {
+		return calculate(data1, data2);
+	}
+
 }
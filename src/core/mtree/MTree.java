@@ -19,10 +19,13 @@
 package core.mtree;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.PriorityQueue;
@@ -35,9 +38,14 @@ import core.mtree.utils.Pair;
 /**
  * The main class that implements the M-Tree.
  *
- * @param <DATA> The type of data that will be indexed by the M-Tree. Objects of
- *        this type are stored in HashMaps and HashSets, so their
- *        {@code hashCode()} and {@code equals()} methods must be consistent.
+ * <p>Each node keeps its children in an array, together with parallel arrays
+ * holding the distance of every child to the node and the covering radius of
+ * every child, so that a traversal can prune children without touching them.
+ *
+ * @param <DATA> The type of data that will be indexed by the M-Tree. Children
+ *        are looked up with {@code equals()}; the objects are only put in
+ *        HashSets while a node is being split, so their {@code hashCode()} and
+ *        {@code equals()} methods must be consistent.
  */
 public class MTree<DATA> {
 
@@ -139,6 +147,7 @@ public class MTree<DATA> {
 			private int yieldedCount;
 
 			private ResultsIterator() {
+				Query.this.candidates = 0;
 				if(MTree.this.root == null) {
 					finished = true;
 					return;
@@ -205,10 +214,19 @@ public class MTree<DATA> {
 					ItemWithDistances<Node> pending = pendingQueue.poll();
 					Node node = pending.item;
 
-					for(IndexItem child : node.children.values()) {
-						if(Math.abs(pending.distance - child.distanceToParent) - child.radius <= Query.this.range) {
-							double childDistance = MTree.this.distanceFunction.calculate(Query.this.data, child.data);
-							double childMinDistance = Math.max(childDistance - child.radius, 0.0);
+					final double[] childDistances = node.childDistances;
+					final double[] childRadii = node.childRadii;
+					for(int i = 0; i < node.childCount; i++) {
+						if(Math.abs(pending.distance - childDistances[i]) - childRadii[i] <= Query.this.range) {
+							IndexItem child = node.childAt(i);
+							// Children further than range + radius are pruned below, so
+							// their distance does not need to be computed exactly.
+							double childDistance = MTree.this.distanceFunction.calculate(
+									Query.this.data, child.data, Query.this.range + childRadii[i]);
+							if(child instanceof MTree.Entry) {
+								++Query.this.candidates;
+							}
+							double childMinDistance = Math.max(childDistance - childRadii[i], 0.0);
 							if(childMinDistance <= Query.this.range) {
 								if(child instanceof MTree.Entry) {
 									@SuppressWarnings("unchecked")
@@ -263,10 +281,19 @@ public class MTree<DATA> {
 			return new ResultsIterator();
 		}
 
+		/**
+		 * The number of data objects whose distance to the query data was
+		 * computed by the last iteration, so far.
+		 */
+		public int getCandidates() {
+			return candidates;
+		}
+
 
 		private DATA data;
 		private double range;
 		private int limit;
+		private int candidates;
 	}
 
 
@@ -284,6 +311,14 @@ public class MTree<DATA> {
 	protected SplitFunction<DATA> splitFunction;
 	protected Node root;
 
+	/**
+	 * Whether subclasses should validate the whole tree with {@link #_check()}
+	 * after every update. The validation visits every node and recomputes the
+	 * distances of all children, so it must only be enabled for debugging.
+	 * Defaults to the value of the {@code mtree.debug} system property.
+	 */
+	protected boolean debugChecks = Boolean.getBoolean("mtree.debug");
+
 
 	/**
 	 * Constructs an M-Tree with the specified distance function.
@@ -449,6 +484,100 @@ public class MTree<DATA> {
 	}
 
 
+	/**
+	 * Performs one range query for each element of {@code queries} in a
+	 * single depth-first traversal: every node is visited once for all the
+	 * queries that cannot prune it, instead of once per query.
+	 *
+	 * <p>The results of each query, including the distances, are the same as
+	 * those of {@link #getNearestByRange(Object, double)}, but they are not
+	 * sorted.
+	 *
+	 * @param queries The query data objects.
+	 * @param range   The maximum distance from each query to fetched
+	 *                neighbors.
+	 * @return For each query, at the same position, its neighbors.
+	 */
+	public List<List<ResultItem>> getAllByRange(List<? extends DATA> queries, double range) {
+		return getAllByRange(queries, range, null);
+	}
+
+	/**
+	 * Same as {@link #getAllByRange(List, double)}, and also counts, for each
+	 * query, the data objects whose distance to it was computed.
+	 *
+	 * @param candidates If not {@code null}, receives at each position the
+	 *                   count of the query at the same position.
+	 */
+	public List<List<ResultItem>> getAllByRange(List<? extends DATA> queries, double range, int[] candidates) {
+		List<List<ResultItem>> results = new ArrayList<List<ResultItem>>(queries.size());
+		for(int q = 0; q < queries.size(); q++) {
+			results.add(new ArrayList<ResultItem>());
+		}
+		if(root == null  ||  queries.isEmpty()) {
+			return results;
+		}
+
+		int[] active = new int[queries.size()];
+		double[] distances = new double[queries.size()];
+		for(int q = 0; q < queries.size(); q++) {
+			active[q] = q;
+			distances[q] = distanceFunction.calculate(queries.get(q), root.data);
+		}
+		collectByRange(root, queries, range, active, distances, queries.size(), results, candidates);
+		return results;
+	}
+
+	// Visits the children of node for the first activeCount queries of
+	// active, whose distances to node are in distances.
+	private void collectByRange(Node node, List<? extends DATA> queries, double range,
+								int[] active, double[] distances, int activeCount,
+								List<List<ResultItem>> results, int[] candidates) {
+		int[] childActive = new int[activeCount];
+		double[] childQueryDistances = new double[activeCount];
+		for(int i = 0; i < node.childCount; i++) {
+			IndexItem child = node.childAt(i);
+			double childDistance = node.childDistances[i];
+			double childRadius = node.childRadii[i];
+			boolean isEntry = child instanceof MTree.Entry;
+			int childActiveCount = 0;
+			for(int a = 0; a < activeCount; a++) {
+				if(Math.abs(distances[a] - childDistance) - childRadius > range) {
+					continue;
+				}
+				int q = active[a];
+				double distance = distanceFunction.calculate(queries.get(q), child.data, range + childRadius);
+				if(isEntry  &&  candidates != null) {
+					++candidates[q];
+				}
+				if(Math.max(distance - childRadius, 0.0) <= range) {
+					if(isEntry) {
+						results.get(q).add(new ResultItem(child.data, distance));
+					} else {
+						childActive[childActiveCount] = q;
+						childQueryDistances[childActiveCount] = distance;
+						childActiveCount++;
+					}
+				}
+			}
+			if(childActiveCount > 0) {
+				@SuppressWarnings("unchecked")
+				Node childNode = (Node)child;
+				collectByRange(childNode, queries, range, childActive, childQueryDistances, childActiveCount, results, candidates);
+			}
+		}
+	}
+
+
+	/**
+	 * Enables or disables the validation of the whole tree after every update.
+	 * @see #debugChecks
+	 */
+	public void setDebugChecks(boolean debugChecks) {
+		this.debugChecks = debugChecks;
+	}
+
+
 	protected void _check() {
 		if(root != null) {
 			root._check();
@@ -459,36 +588,32 @@ public class MTree<DATA> {
 	private class IndexItem {
 		DATA data;
 		protected double radius;
-		double distanceToParent;
 
 		private IndexItem(DATA data) {
 			this.data = data;
 			this.radius = 0;
-			this.distanceToParent = -1;
 		}
 
 		int _check() {
 			_checkRadius();
-			_checkDistanceToParent();
 			return 1;
 		}
 
 		private void _checkRadius() {
 			assert radius >= 0;
 		}
-
-		protected void _checkDistanceToParent() {
-			assert !(this instanceof MTree.RootLeafNode);
-			assert !(this instanceof MTree.RootNode);
-			assert distanceToParent >= 0;
-		}
 	}
 
 
 
 	private abstract class Node extends IndexItem {
 
-		protected Map<DATA, IndexItem> children = new HashMap<DATA, IndexItem>();
+		// The children of the node and, at the same positions, their distance
+		// to this node and their covering radius.
+		protected Object[] children;
+		protected double[] childDistances;
+		protected double[] childRadii;
+		protected int      childCount;
 		protected Rootness       rootness;
 		protected Leafness<DATA> leafness;
 
@@ -497,6 +622,14 @@ public class MTree<DATA> {
 		Node(DATA data, R rootness, L leafness) {
 			super(data);
 
+			// A node may temporarily hold one child above the maximum capacity
+			// before it is split.
+			int capacity = MTree.this.maxNodeCapacity + 1;
+			children       = new Object[capacity];
+			childDistances = new double[capacity];
+			childRadii     = new double[capacity];
+			childCount     = 0;
+
 			rootness.thisNode = this;
 			this.rootness = rootness;
 
@@ -515,13 +648,11 @@ public class MTree<DATA> {
 			_checkMaxCapacity();
 
 			int childHeight = -1;
-			for(Map.Entry<DATA, IndexItem> e : children.entrySet()) {
-				DATA data = e.getKey();
-				IndexItem child = e.getValue();
-				assert child.data.equals(data);
+			for(int i = 0; i < childCount; i++) {
+				IndexItem child = childAt(i);
 
 				_checkChildClass(child);
-				_checkChildMetrics(child);
+				_checkChildMetrics(i);
 
 				int height = child._check();
 				if(childHeight < 0) {
@@ -534,6 +665,59 @@ public class MTree<DATA> {
 			return childHeight + 1;
 		}
 
+		@SuppressWarnings("unchecked")
+		IndexItem childAt(int index) {
+			return (IndexItem) children[index];
+		}
+
+		int indexOfChild(DATA data) {
+			for(int i = 0; i < childCount; i++) {
+				if(childAt(i).data.equals(data)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		int indexOfChild(IndexItem child) {
+			for(int i = 0; i < childCount; i++) {
+				if(children[i] == child) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		void putChild(IndexItem child, double distance) {
+			if(childCount == children.length) {
+				int capacity = 2 * children.length;
+				children       = Arrays.copyOf(children, capacity);
+				childDistances = Arrays.copyOf(childDistances, capacity);
+				childRadii     = Arrays.copyOf(childRadii, capacity);
+			}
+			children[childCount]       = child;
+			childDistances[childCount] = distance;
+			childRadii[childCount]     = child.radius;
+			childCount++;
+			this.radius = Math.max(this.radius, distance + child.radius);
+		}
+
+		IndexItem removeChildAt(int index) {
+			IndexItem removed = childAt(index);
+			int last = childCount - 1;
+			children[index]       = children[last];
+			childDistances[index] = childDistances[last];
+			childRadii[index]     = childRadii[last];
+			children[last] = null;
+			childCount--;
+			return removed;
+		}
+
+		void clearChildren() {
+			Arrays.fill(children, 0, childCount, null);
+			childCount = 0;
+		}
+
 		protected void doAddData(DATA data, double distance) {
 			leafness.doAddData(data, distance);
 		}
@@ -543,9 +727,18 @@ public class MTree<DATA> {
 		}
 
 		private final void checkMaxCapacity() throws SplitNodeReplacement {
-			if(children.size() > MTree.this.maxNodeCapacity) {
+			if(childCount > MTree.this.maxNodeCapacity) {
 				DistanceFunction<? super DATA> cachedDistanceFunction = DistanceFunctions.cached(MTree.this.distanceFunction);
-				SplitResult<DATA> splitResult = MTree.this.splitFunction.process(children.keySet(), cachedDistanceFunction);
+				// The partitions hold the same data objects as the set passed
+				// to the split function, so children are found by identity.
+				Set<DATA> dataSet = new HashSet<DATA>();
+				Map<DATA, IndexItem> childrenByData = new IdentityHashMap<DATA, IndexItem>();
+				for(int i = 0; i < childCount; i++) {
+					IndexItem child = childAt(i);
+					dataSet.add(child.data);
+					childrenByData.put(child.data, child);
+				}
+				SplitResult<DATA> splitResult = MTree.this.splitFunction.process(dataSet, cachedDistanceFunction);
 
 				Node newNode0 = null;
 				Node newNode1 = null;
@@ -555,8 +748,7 @@ public class MTree<DATA> {
 
 					Node newNode = newSplitNodeReplacement(promotedData);
 					for(DATA data : partition) {
-						IndexItem child = children.get(data);
-						children.remove(data);
+						IndexItem child = childrenByData.remove(data);
 						double distance = cachedDistanceFunction.calculate(promotedData, data);
 						newNode.addChild(child, distance);
 					}
@@ -567,7 +759,8 @@ public class MTree<DATA> {
 						newNode1 = newNode;
 					}
 				}
-				assert children.isEmpty();
+				assert childrenByData.isEmpty();
+				clearChildren();
 
 				throw new SplitNodeReplacement(newNode0, newNode1);
 			}
@@ -584,7 +777,7 @@ public class MTree<DATA> {
 
 		void removeData(DATA data, double distance) throws RootNodeReplacement, NodeUnderCapacity, DataNotFound {
 			doRemoveData(data, distance);
-			if(children.size() < getMinCapacity()) {
+			if(childCount < getMinCapacity()) {
 				throw new NodeUnderCapacity();
 			}
 		}
@@ -593,13 +786,11 @@ public class MTree<DATA> {
 			return rootness.getMinCapacity();
 		}
 
-		private void updateMetrics(IndexItem child, double distance) {
-			child.distanceToParent = distance;
-			updateRadius(child);
-		}
-
-		private void updateRadius(IndexItem child) {
-			this.radius = Math.max(this.radius, child.distanceToParent + child.radius);
+		// Must be called whenever the radius of the child at the given
+		// position may have grown.
+		private void updateRadius(int index) {
+			childRadii[index] = childAt(index).radius;
+			this.radius = Math.max(this.radius, childDistances[index] + childRadii[index]);
 		}
 
 		void _checkMinCapacity() {
@@ -607,25 +798,23 @@ public class MTree<DATA> {
 		}
 
 		private void _checkMaxCapacity() {
-			assert children.size() <= MTree.this.maxNodeCapacity;
+			assert childCount <= MTree.this.maxNodeCapacity;
 		}
 
 		private void _checkChildClass(IndexItem child) {
 			leafness._checkChildClass(child);
 		}
 
-		private void _checkChildMetrics(IndexItem child) {
+		private void _checkChildMetrics(int index) {
+			IndexItem child = childAt(index);
 			double dist = MTree.this.distanceFunction.calculate(child.data, this.data);
-			assert child.distanceToParent == dist;
+			assert childDistances[index] == dist;
+			assert childRadii[index] == child.radius;
 
-			double sum = child.distanceToParent + child.radius;
+			double sum = childDistances[index] + child.radius;
 			assert sum <= this.radius;
 		}
 
-		protected void _checkDistanceToParent() {
-			rootness._checkDistanceToParent();
-		}
-
 		private MTree<DATA> mtree() {
 			return MTree.this;
 		}
@@ -648,7 +837,6 @@ public class MTree<DATA> {
 
 	private interface Rootness {
 		int getMinCapacity();
-		void _checkDistanceToParent();
 		void _checkMinCapacity();
 	}
 
@@ -661,11 +849,6 @@ public class MTree<DATA> {
 			throw new RuntimeException("Should not be called!");
 		}
 
-		@Override
-		public void _checkDistanceToParent() {
-			assert thisNode.distanceToParent == -1;
-		}
-
 		@Override
 		public void _checkMinCapacity() {
 			thisNode._checkMinCapacity();
@@ -683,12 +866,7 @@ public class MTree<DATA> {
 
 		@Override
 		public void _checkMinCapacity() {
-			assert thisNode.children.size() >= thisNode.mtree().minNodeCapacity;
-		}
-
-		@Override
-		public void _checkDistanceToParent() {
-			assert thisNode.distanceToParent >= 0;
+			assert thisNode.childCount >= thisNode.mtree().minNodeCapacity;
 		}
 	};
 
@@ -697,17 +875,11 @@ public class MTree<DATA> {
 
 		public void doAddData(DATA data, double distance) {
 			Entry entry = thisNode.mtree().new Entry(data);
-			assert !thisNode.children.containsKey(data);
-			thisNode.children.put(data, entry);
-			assert thisNode.children.containsKey(data);
-			thisNode.updateMetrics(entry, distance);
+			thisNode.putChild(entry, distance);
 		}
 
 		public void addChild(IndexItem child, double distance) {
-			assert !thisNode.children.containsKey(child.data);
-			thisNode.children.put(child.data, child);
-			assert thisNode.children.containsKey(child.data);
-			thisNode.updateMetrics(child, distance);
+			thisNode.putChild(child, distance);
 		}
 
 		public Node newSplitNodeReplacement(DATA data) {
@@ -717,9 +889,11 @@ public class MTree<DATA> {
 
 		@Override
 		public void doRemoveData(DATA data, double distance) throws DataNotFound {
-			if(thisNode.children.remove(data) == null) {
+			int index = thisNode.indexOfChild(data);
+			if(index < 0) {
 				throw new DataNotFound();
 			}
+			thisNode.removeChildAt(index);
 		}
 
 		public void _checkChildClass(IndexItem child) {
@@ -732,47 +906,47 @@ public class MTree<DATA> {
 
 		public void doAddData(DATA data, double distance) {
 			class CandidateChild {
-				Node node;
+				int index;
 				double distance;
 				double metric;
-				private CandidateChild(Node node, double distance, double metric) {
-					this.node = node;
+				private CandidateChild(int index, double distance, double metric) {
+					this.index = index;
 					this.distance = distance;
 					this.metric = metric;
 				}
 			}
 
-			CandidateChild minRadiusIncreaseNeeded = new CandidateChild(null, -1.0, Double.POSITIVE_INFINITY);
-			CandidateChild nearestDistance         = new CandidateChild(null, -1.0, Double.POSITIVE_INFINITY);
+			CandidateChild minRadiusIncreaseNeeded = new CandidateChild(-1, -1.0, Double.POSITIVE_INFINITY);
+			CandidateChild nearestDistance         = new CandidateChild(-1, -1.0, Double.POSITIVE_INFINITY);
 
-			for(IndexItem item : thisNode.children.values()) {
-				@SuppressWarnings("unchecked")
-				Node child = (Node)item;
+			for(int i = 0; i < thisNode.childCount; i++) {
+				IndexItem child = thisNode.childAt(i);
+				double childRadius = thisNode.childRadii[i];
 				double childDistance = thisNode.mtree().distanceFunction.calculate(child.data, data);
-				if(childDistance > child.radius) {
-					double radiusIncrease = childDistance - child.radius;
+				if(childDistance > childRadius) {
+					double radiusIncrease = childDistance - childRadius;
 					if(radiusIncrease < minRadiusIncreaseNeeded.metric) {
-						minRadiusIncreaseNeeded = new CandidateChild(child, childDistance, radiusIncrease);
+						minRadiusIncreaseNeeded = new CandidateChild(i, childDistance, radiusIncrease);
 					}
 				} else {
 					if(childDistance < nearestDistance.metric) {
-						nearestDistance = new CandidateChild(child, childDistance, childDistance);
+						nearestDistance = new CandidateChild(i, childDistance, childDistance);
 					}
 				}
 			}
 
-			CandidateChild chosen = (nearestDistance.node != null)
+			CandidateChild chosen = (nearestDistance.index >= 0)
 					? nearestDistance
 					: minRadiusIncreaseNeeded;
 
-			Node child = chosen.node;
+			@SuppressWarnings("unchecked")
+			Node child = (Node) thisNode.childAt(chosen.index);
 			try {
 				child.addData(data, chosen.distance);
-				thisNode.updateRadius(child);
+				thisNode.updateRadius(chosen.index);
 			} catch(SplitNodeReplacement e) {
 				// Replace current child with new nodes
-				IndexItem removedNode = thisNode.children.remove(child.data);
-				assert removedNode != null;
+				thisNode.removeChildAt(chosen.index);
 
 				for(int i = 0; i < e.newNodes.length; ++i) {
 					@SuppressWarnings("unchecked")
@@ -805,22 +979,23 @@ public class MTree<DATA> {
 
 				newChild = cwd.child;
 				distance = cwd.distance;
-				if(thisNode.children.containsKey(newChild.data)) {
+				int existingIndex = thisNode.indexOfChild(newChild.data);
+				if(existingIndex >= 0) {
 					@SuppressWarnings("unchecked")
-					Node existingChild = (Node) thisNode.children.get(newChild.data);
+					Node existingChild = (Node) thisNode.childAt(existingIndex);
 					assert existingChild.data.equals(newChild.data);
 
 					// Transfer the _children_ of the newChild to the existingChild
-					for(IndexItem grandchild : newChild.children.values()) {
-						existingChild.addChild(grandchild, grandchild.distanceToParent);
+					for(int i = 0; i < newChild.childCount; i++) {
+						existingChild.addChild(newChild.childAt(i), newChild.childDistances[i]);
 					}
-					newChild.children.clear();
+					newChild.clearChildren();
 
 					try {
 						existingChild.checkMaxCapacity();
+						thisNode.updateRadius(existingIndex);
 					} catch(SplitNodeReplacement e) {
-						IndexItem removedNode = thisNode.children.remove(existingChild.data);
-						assert removedNode != null;
+						thisNode.removeChildAt(existingIndex);
 
 						for(int i = 0; i < e.newNodes.length; ++i) {
 							@SuppressWarnings("unchecked")
@@ -830,8 +1005,7 @@ public class MTree<DATA> {
 						}
 					}
 				} else {
-					thisNode.children.put(newChild.data, newChild);
-					thisNode.updateMetrics(newChild, distance);
+					thisNode.putChild(newChild, distance);
 				}
 			}
 		}
@@ -843,21 +1017,22 @@ public class MTree<DATA> {
 
 
 		public void doRemoveData(DATA data, double distance) throws DataNotFound {
-			for(IndexItem childItem : thisNode.children.values()) {
-				@SuppressWarnings("unchecked")
-				Node child = (Node)childItem;
-				if(Math.abs(distance - child.distanceToParent) <= child.radius) {
-					double distanceToChild = thisNode.mtree().distanceFunction.calculate(data, child.data);
-					if(distanceToChild <= child.radius) {
+			for(int i = 0; i < thisNode.childCount; i++) {
+				double childRadius = thisNode.childRadii[i];
+				if(Math.abs(distance - thisNode.childDistances[i]) <= childRadius) {
+					@SuppressWarnings("unchecked")
+					Node child = (Node) thisNode.childAt(i);
+					double distanceToChild = thisNode.mtree().distanceFunction.calculate(data, child.data, childRadius);
+					if(distanceToChild <= childRadius) {
 						try {
 							child.removeData(data, distanceToChild);
-							thisNode.updateRadius(child);
+							thisNode.updateRadius(i);
 							return;
 						} catch(DataNotFound e) {
 							// If DataNotFound was thrown, then the data was not found in the child
 						} catch(NodeUnderCapacity e) {
 							Node expandedChild = balanceChildren(child);
-							thisNode.updateRadius(expandedChild);
+							thisNode.updateRadius(thisNode.indexOfChild(expandedChild));
 							return;
 						} catch (RootNodeReplacement e) {
 							throw new RuntimeException("Should never happen!");
@@ -879,13 +1054,13 @@ public class MTree<DATA> {
 			Node nearestMergeCandidate = null;
 			double distanceNearestMergeCandidate = Double.POSITIVE_INFINITY;
 
-			for(IndexItem child : thisNode.children.values()) {
+			for(int i = 0; i < thisNode.childCount; i++) {
 				@SuppressWarnings("unchecked")
-				Node anotherChild = (Node)child;
+				Node anotherChild = (Node) thisNode.childAt(i);
 				if(anotherChild == theChild) continue;
 
 				double distance = thisNode.mtree().distanceFunction.calculate(theChild.data, anotherChild.data);
-				if(anotherChild.children.size() > anotherChild.getMinCapacity()) {
+				if(anotherChild.childCount > anotherChild.getMinCapacity()) {
 					if(distance < distanceNearestDonor) {
 						distanceNearestDonor = distance;
 						nearestDonor = anotherChild;
@@ -900,29 +1075,31 @@ public class MTree<DATA> {
 
 			if(nearestDonor == null) {
 				// Merge
-				for(IndexItem grandchild : theChild.children.values()) {
+				for(int i = 0; i < theChild.childCount; i++) {
+					IndexItem grandchild = theChild.childAt(i);
 					double distance = thisNode.mtree().distanceFunction.calculate(grandchild.data, nearestMergeCandidate.data);
 					nearestMergeCandidate.addChild(grandchild, distance);
 				}
 
-				IndexItem removed = thisNode.children.remove(theChild.data);
-				assert removed != null;
+				int theChildIndex = thisNode.indexOfChild(theChild);
+				assert theChildIndex >= 0;
+				thisNode.removeChildAt(theChildIndex);
 				return nearestMergeCandidate;
 			} else {
 				// Donate
 				// Look for the nearest grandchild
-				IndexItem nearestGrandchild = null;
+				int nearestGrandchildIndex = -1;
 				double nearestGrandchildDistance = Double.POSITIVE_INFINITY;
-				for(IndexItem grandchild : nearestDonor.children.values()) {
+				for(int i = 0; i < nearestDonor.childCount; i++) {
+					IndexItem grandchild = nearestDonor.childAt(i);
 					double distance = thisNode.mtree().distanceFunction.calculate(grandchild.data, theChild.data);
 					if(distance < nearestGrandchildDistance) {
 						nearestGrandchildDistance = distance;
-						nearestGrandchild = grandchild;
+						nearestGrandchildIndex = i;
 					}
 				}
 
-				IndexItem removedNode = nearestDonor.children.remove(nearestGrandchild.data);
-				assert removedNode != null;
+				IndexItem nearestGrandchild = nearestDonor.removeChildAt(nearestGrandchildIndex);
 				theChild.addChild(nearestGrandchild, nearestGrandchildDistance);
 				return theChild;
 			}
@@ -946,7 +1123,7 @@ public class MTree<DATA> {
 			try {
 				super.removeData(data, distance);
 			} catch (NodeUnderCapacity e) {
-				assert children.isEmpty();
+				assert childCount == 0;
 				throw new RootNodeReplacement(null);
 			}
 		}
@@ -956,7 +1133,7 @@ public class MTree<DATA> {
 		}
 
 		void _checkMinCapacity() {
-			assert children.size() >= 1;
+			assert childCount >= 1;
 		}
 	}
 
@@ -972,7 +1149,7 @@ public class MTree<DATA> {
 			} catch(NodeUnderCapacity e) {
 				// Promote the only child to root
 				@SuppressWarnings("unchecked")
-				Node theChild = (Node)(children.values().iterator().next());
+				Node theChild = (Node) childAt(0);
 				Node newRoot;
 				if(theChild instanceof MTree.InternalNode) {
 					newRoot = new RootNode(theChild.data);
@@ -981,11 +1158,12 @@ public class MTree<DATA> {
 					newRoot = new RootLeafNode(theChild.data);
 				}
 
-				for(IndexItem grandchild : theChild.children.values()) {
+				for(int i = 0; i < theChild.childCount; i++) {
+					IndexItem grandchild = theChild.childAt(i);
 					distance = MTree.this.distanceFunction.calculate(newRoot.data, grandchild.data);
 					newRoot.addChild(grandchild, distance);
 				}
-				theChild.children.clear();
+				theChild.clearChildren();
 
 				throw new RootNodeReplacement(newRoot);
 			}
@@ -999,7 +1177,7 @@ public class MTree<DATA> {
 
 		@Override
 		void _checkMinCapacity() {
-			assert children.size() >= 2;
+			assert childCount >= 2;
 		}
 	}
 
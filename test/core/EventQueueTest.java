@@ -0,0 +1,112 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Checks of EventQueue. There is no test framework in the build, so this is a plain program
+ * that fails with an AssertionError:
+ *
+ *   javac -d out $(find src -name '*.java')
+ *   javac -cp out -d test-out test/core/EventQueueTest.java
+ *   java -cp out:test-out core.EventQueueTest
+ */
+public class EventQueueTest {
+
+    private static class Item extends DataObj<Item> {
+        Item(long id) {
+            super(id, new double[0], null);
+        }
+
+        @Override
+        public String toString() {
+            return "item " + id;
+        }
+    }
+
+    public static void main(String[] args) {
+        insertAlreadyDue();
+        requeueAfterRelease();
+        reinsertInSameBucket();
+        reinsertInLaterBucket();
+        System.out.println("EventQueueTest passed");
+    }
+
+    // buckets of width 5 ending at 10, 15, 20, ...
+    private static EventQueue<Item> newQueue() {
+        return new EventQueue<>(10, 5, 4);
+    }
+
+    private static List<Item> pollAll(EventQueue<Item> queue, long limit) {
+        ArrayList<Item> polled = new ArrayList<>();
+        Item item;
+        while ((item = queue.pollDue(limit)) != null) {
+            polled.add(item);
+        }
+        return polled;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static void expect(List<Item> polled, Item... expected) {
+        check(polled.size() == expected.length && polled.containsAll(Arrays.asList(expected)),
+                "expected " + Arrays.asList(expected) + ", polled " + polled);
+    }
+
+    // An item whose time is in a bucket already drained is released with the next bucket
+    private static void insertAlreadyDue() {
+        EventQueue<Item> queue = newQueue();
+        Item a = new Item(1);
+        Item b = new Item(2);
+        Item c = new Item(3);
+        queue.insert(a, 12);
+        queue.insert(b, 20);
+        expect(pollAll(queue, 15), a);
+
+        queue.insert(c, 13);
+        expect(pollAll(queue, 20), b, c);
+        check(queue.isEmpty(), "queue not empty after draining it");
+    }
+
+    // A released item can be queued again, with the same time
+    private static void requeueAfterRelease() {
+        EventQueue<Item> queue = newQueue();
+        Item a = new Item(1);
+        Item b = new Item(2);
+        queue.insert(a, 13);
+        queue.insert(b, 25);
+        expect(pollAll(queue, 15), a);
+
+        queue.insert(a, 13);
+        expect(pollAll(queue, 20), a);
+        queue.insert(a, 13);
+        expect(pollAll(queue, 25), b, a);
+    }
+
+    // Times in the same bucket queue the item once
+    private static void reinsertInSameBucket() {
+        EventQueue<Item> queue = newQueue();
+        Item a = new Item(1);
+        queue.insert(a, 16);
+        queue.insert(a, 19);
+        expect(pollAll(queue, 20), a);
+    }
+
+    // The copy left in the earlier bucket is skipped
+    private static void reinsertInLaterBucket() {
+        EventQueue<Item> queue = newQueue();
+        Item a = new Item(1);
+        Item b = new Item(2);
+        queue.insert(a, 12);
+        queue.insert(b, 14);
+        queue.insert(a, 33);
+        expect(pollAll(queue, 15), b);
+        expect(pollAll(queue, 30));
+        expect(pollAll(queue, 35), a);
+    }
+}